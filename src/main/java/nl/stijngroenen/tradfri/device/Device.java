@@ -19,18 +19,18 @@
 
 package nl.stijngroenen.tradfri.device;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import nl.stijngroenen.tradfri.device.event.EventDispatcher;
 import nl.stijngroenen.tradfri.device.event.EventHandler;
-import nl.stijngroenen.tradfri.util.ApiEndpoint;
+import nl.stijngroenen.tradfri.util.ApiResource;
 import nl.stijngroenen.tradfri.util.CoapClient;
 
 /**
  * The class that represents an IKEA TRÅDFRI device
  *
  * @author Stijn Groenen
- * @version 1.1.0
+ * @version 1.4.0
  */
 public class Device {
 
@@ -70,9 +70,19 @@ public class Device {
     private DeviceObserver observer;
 
     /**
-     * The event handlers registered for the device
+     * The time the state of the device was last received from the IKEA TRÅDFRI gateway (in milliseconds since the epoch)
      */
-    private final List<EventHandler> eventHandlers;
+    private volatile long lastUpdated;
+
+    /**
+     * The event handlers registered for the device, together with their dispatch table
+     */
+    private final EventDispatcher eventDispatcher;
+
+    /**
+     * The time to wait for the state of the device to settle before handling its latest notification (in milliseconds)
+     */
+    private long coalescingWindow = Observer.DEFAULT_COALESCING_WINDOW;
 
     /**
      * Construct the Device class
@@ -90,7 +100,7 @@ public class Device {
         this.instanceId = instanceId;
         this.deviceInfo = deviceInfo;
         this.coapClient = coapClient;
-        this.eventHandlers = new ArrayList<>();
+        this.eventDispatcher = new EventDispatcher();
     }
 
     /**
@@ -190,7 +200,57 @@ public class Device {
      * @since 1.0.0
      */
     public String getEndpoint() {
-        return ApiEndpoint.getUri(ApiEndpoint.DEVICES, String.valueOf(getInstanceId()));
+        return getResource().getUri();
+    }
+
+    /**
+     * Get the resource of the device on its IKEA TRÅDFRI gateway
+     *
+     * @return The resource of the device
+     * @since 1.4.0
+     */
+    public ApiResource getResource() {
+        return coapClient.getEndpoints().getDevice(getInstanceId());
+    }
+
+    /**
+     * Get the time the state of the device was last received from the IKEA TRÅDFRI gateway, by fetching the device or by an observe notification
+     *
+     * @return The time of the last update (in milliseconds since the epoch), or 0 if the state was never received
+     * @since 1.4.0
+     */
+    public long getLastUpdated() {
+        return this.lastUpdated;
+    }
+
+    /**
+     * Record that the state of the device was just received from the IKEA TRÅDFRI gateway
+     *
+     * @since 1.4.0
+     */
+    void markUpdated() {
+        this.lastUpdated = System.currentTimeMillis();
+    }
+
+    /**
+     * Check if the known state of the device can be trusted to find redundant writes
+     *
+     * @return True if the device is being observed, or its state was received within the maximum state age of the redundant write filter
+     * @since 1.4.0
+     */
+    boolean isStateCurrent() {
+        return isObserved() || coapClient.getRedundantWriteFilter().isCurrent(lastUpdated);
+    }
+
+    /**
+     * Check if the state of the device is kept current by observe notifications
+     *
+     * @return True if the device is being observed, false if not
+     * @since 1.4.0
+     */
+    boolean isObserved() {
+        DeviceObserver currentObserver = observer;
+        return currentObserver != null && currentObserver.isActive();
     }
 
     /**
@@ -202,6 +262,7 @@ public class Device {
     public boolean enableObserve() {
         if (observer == null) {
             observer = new DeviceObserver(this, this.coapClient);
+            observer.setCoalescingWindow(coalescingWindow);
         }
         return observer.start();
     }
@@ -219,6 +280,31 @@ public class Device {
         return observer.stop();
     }
 
+    /**
+     * Get the time to wait for the state of the device to settle before handling its latest notification (in milliseconds)
+     *
+     * @return The coalescing window (in milliseconds)
+     * @since 1.4.0
+     */
+    public long getCoalescingWindow() {
+        return this.coalescingWindow;
+    }
+
+    /**
+     * Change the time to wait for the state of the device to settle before handling its latest notification (in milliseconds)<br>
+     * Notifications that arrive within the window replace each other, so the event handlers are called once for the settled state.
+     * A window of 0 calls the event handlers as soon as a notification arrives.
+     *
+     * @param coalescingWindow The new coalescing window (in milliseconds)
+     * @since 1.4.0
+     */
+    public void setCoalescingWindow(long coalescingWindow) {
+        this.coalescingWindow = Math.max(coalescingWindow, 0L);
+        if (observer != null) {
+            observer.setCoalescingWindow(this.coalescingWindow);
+        }
+    }
+
     /**
      * Get a list of event handlers for the device
      *
@@ -226,7 +312,17 @@ public class Device {
      * @since 1.0.0
      */
     public List<EventHandler> getEventHandlers() {
-        return eventHandlers;
+        return eventDispatcher.getEventHandlers();
+    }
+
+    /**
+     * Get the dispatcher that calls the event handlers for the device
+     *
+     * @return The dispatcher that calls the event handlers for the device
+     * @since 1.4.0
+     */
+    EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
     }
 
     /**
@@ -236,7 +332,7 @@ public class Device {
      * @since 1.0.0
      */
     public void addEventHandler(EventHandler eventHandler) {
-        this.eventHandlers.add(eventHandler);
+        this.eventDispatcher.addEventHandler(eventHandler);
     }
 
     /**
@@ -246,7 +342,7 @@ public class Device {
      * @since 1.0.0
      */
     public void removeEventHandler(EventHandler eventHandler) {
-        this.eventHandlers.remove(eventHandler);
+        this.eventDispatcher.removeEventHandler(eventHandler);
     }
 
     /**
@@ -19,12 +19,14 @@
 
 package nl.stijngroenen.tradfri.device;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.stijngroenen.tradfri.device.event.DeviceEvent;
-import nl.stijngroenen.tradfri.device.event.EventHandler;
+import nl.stijngroenen.tradfri.device.event.EventDispatcher;
 import nl.stijngroenen.tradfri.device.event.LightChangeBrightnessEvent;
 import nl.stijngroenen.tradfri.device.event.LightChangeColourEvent;
 import nl.stijngroenen.tradfri.device.event.LightChangeColourHexEvent;
@@ -36,20 +38,23 @@ import nl.stijngroenen.tradfri.device.event.LightChangeEvent;
 import nl.stijngroenen.tradfri.device.event.LightChangeHueEvent;
 import nl.stijngroenen.tradfri.device.event.LightChangeOnEvent;
 import nl.stijngroenen.tradfri.device.event.LightChangeSaturationEvent;
+import nl.stijngroenen.tradfri.device.event.LightCorrectionEvent;
 import nl.stijngroenen.tradfri.device.event.LightEvent;
 import nl.stijngroenen.tradfri.device.event.MotionSensorEvent;
 import nl.stijngroenen.tradfri.device.event.PlugChangeEvent;
 import nl.stijngroenen.tradfri.device.event.PlugChangeOnEvent;
+import nl.stijngroenen.tradfri.device.event.PlugCorrectionEvent;
 import nl.stijngroenen.tradfri.device.event.PlugEvent;
 import nl.stijngroenen.tradfri.device.event.RemoteEvent;
 import nl.stijngroenen.tradfri.payload.DeviceResponse;
 import nl.stijngroenen.tradfri.util.CoapClient;
+import nl.stijngroenen.tradfri.util.JsonCodec;
 
 /**
  * The class that observes a device to automagically detect changes
  *
  * @author Stijn Groenen
- * @version 1.1.0
+ * @version 1.4.0
  */
 public class DeviceObserver extends Observer {
 
@@ -58,11 +63,6 @@ public class DeviceObserver extends Observer {
      */
     private final Device device;
 
-    /**
-     * An object mapper used for mapping JSON responses from the IKEA TRÅDFRI gateway to Java classes
-     */
-    private final ObjectMapper objectMapper;
-
     /**
      * Construct the DeviceObserver class
      *
@@ -71,9 +71,8 @@ public class DeviceObserver extends Observer {
      * @since 1.0.0
      */
     public DeviceObserver(Device device, CoapClient coapClient) {
-        super(device.getEndpoint(), coapClient);
+        super(device.getResource(), coapClient);
         this.device = device;
-        this.objectMapper = new ObjectMapper();
     }
 
     /**
@@ -84,80 +83,165 @@ public class DeviceObserver extends Observer {
      */
     @Override
     public void callEventHandlers(String payload) {
-        try {
-            DeviceResponse response = objectMapper.readValue(payload, DeviceResponse.class);
-            ArrayList<DeviceEvent> events = new ArrayList<>();
-            ArrayList<EventHandler> called = new ArrayList<>();
-            if (device.isLight()) {
-                LightProperties oldProperties = (LightProperties) device.getProperties();
-                if (response.getLightProperties() != null && response.getLightProperties().length > 0) {
-                    device.setProperties(response.getLightProperties()[0]);
-                }
-                LightProperties newProperties = (LightProperties) device.getProperties();
-                events.add(new LightEvent(device.toLight()));
-                ArrayList<DeviceEvent> changeEvents = new ArrayList<>();
-                if (checkChanges(oldProperties.getOn(), newProperties.getOn())) {
-                    changeEvents.add(new LightChangeOnEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getBrightness(), newProperties.getBrightness())) {
-                    changeEvents.add(new LightChangeBrightnessEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getColourHex(), newProperties.getColourHex())) {
-                    changeEvents.add(new LightChangeColourHexEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getHue(), newProperties.getHue())) {
-                    changeEvents.add(new LightChangeHueEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getSaturation(), newProperties.getSaturation())) {
-                    changeEvents.add(new LightChangeSaturationEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getColourX(), newProperties.getColourX())) {
-                    changeEvents.add(new LightChangeColourXEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getColourY(), newProperties.getColourY())) {
-                    changeEvents.add(new LightChangeColourYEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getColourX(), newProperties.getColourX())
-                    || checkChanges(oldProperties.getColourY(), newProperties.getColourY())) {
-                    changeEvents.add(new LightChangeColourXYEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getColourX(), newProperties.getColourX()) || checkChanges(oldProperties.getColourY(), newProperties.getColourY()) ||
-                        checkChanges(oldProperties.getHue(), newProperties.getHue()) || checkChanges(oldProperties.getSaturation(), newProperties.getSaturation())) {
-                    changeEvents.add(new LightChangeColourEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (checkChanges(oldProperties.getColourTemperature(), newProperties.getColourTemperature())) {
-                    changeEvents.add(new LightChangeColourTemperatureEvent(device.toLight(), oldProperties, newProperties));
-                }
-                if (changeEvents.size() > 0) {
-                    events.add(new LightChangeEvent(device.toLight(), oldProperties, newProperties));
-                    events.addAll(changeEvents);
-                }
-            } else if (device.isPlug()) {
-                PlugProperties oldProperties = (PlugProperties) device.getProperties();
-                if (response.getPlugProperties() != null && response.getPlugProperties().length > 0) {
-                    device.setProperties(response.getPlugProperties()[0]);
-                }
-                PlugProperties newProperties = (PlugProperties) device.getProperties();
-                events.add(new PlugEvent(device.toPlug()));
-                if (checkChanges(oldProperties.getOn(), newProperties.getOn())) {
-                    events.add(new PlugChangeEvent(device.toPlug(), oldProperties, newProperties));
-                    events.add(new PlugChangeOnEvent(device.toPlug(), oldProperties, newProperties));
+        callEventHandlers(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Handles a new response from the CoAP client and calls the appropriate event handlers for the device<br>
+     * Only the events that a registered event handler can receive are constructed
+     *
+     * @param payload The payload of the response to the CoAP request
+     * @since 1.4.0
+     */
+    @Override
+    public void callEventHandlers(byte[] payload) {
+        EventDispatcher dispatcher = device.getEventDispatcher();
+        if (device.isLight()) {
+            DeviceResponse response = readResponse(payload);
+            if (response == null) {
+                return;
+            }
+            Light light = device.toLight();
+            LightProperties oldProperties = light.getReportedProperties();
+            LightProperties expectedProperties = null;
+            if (response.getLightProperties() != null && response.getLightProperties().length > 0) {
+                expectedProperties = light.reconcile(response.getLightProperties()[0]);
+            }
+            device.markUpdated();
+            if (dispatcher.hasEventHandlers()) {
+                List<DeviceEvent> events = createLightEvents(dispatcher, light, oldProperties, light.getReportedProperties());
+                if (expectedProperties != null && dispatcher.hasEventHandlers(LightCorrectionEvent.class)) {
+                    events.add(new LightCorrectionEvent(light, expectedProperties, light.getReportedProperties()));
                 }
-            } else if (device.isRemote()) {
-                events.add(new RemoteEvent(device.toRemote()));
-            } else if (device.isMotionSensor()) {
-                events.add(new MotionSensorEvent(device.toMotionSensor()));
+                dispatcher.dispatch(events);
+            }
+        } else if (device.isPlug()) {
+            DeviceResponse response = readResponse(payload);
+            if (response == null) {
+                return;
             }
-            for (EventHandler eventHandler : device.getEventHandlers()) {
-                for (DeviceEvent event : events) {
-                    if (eventHandler.getEventType().isAssignableFrom(event.getClass()) && !called.contains(eventHandler)) {
-                        eventHandler.handle(event);
-                        called.add(eventHandler);
-                    }
+            Plug plug = device.toPlug();
+            PlugProperties oldProperties = plug.getReportedProperties();
+            PlugProperties expectedProperties = null;
+            if (response.getPlugProperties() != null && response.getPlugProperties().length > 0) {
+                expectedProperties = plug.reconcile(response.getPlugProperties()[0]);
+            }
+            device.markUpdated();
+            if (dispatcher.hasEventHandlers()) {
+                List<DeviceEvent> events = createPlugEvents(dispatcher, plug, oldProperties, plug.getReportedProperties());
+                if (expectedProperties != null && dispatcher.hasEventHandlers(PlugCorrectionEvent.class)) {
+                    events.add(new PlugCorrectionEvent(plug, expectedProperties, plug.getReportedProperties()));
                 }
+                dispatcher.dispatch(events);
+            }
+        } else if (device.isRemote()) {
+            device.markUpdated();
+            if (dispatcher.hasEventHandlers(RemoteEvent.class)) {
+                dispatcher.dispatch(Collections.singletonList(new RemoteEvent(device.toRemote())));
             }
-        } catch (JsonProcessingException ignored) {
+        } else if (device.isMotionSensor()) {
+            device.markUpdated();
+            if (dispatcher.hasEventHandlers(MotionSensorEvent.class)) {
+                dispatcher.dispatch(Collections.singletonList(new MotionSensorEvent(device.toMotionSensor())));
+            }
+        }
+    }
+
+    /**
+     * Map the payload of a response to the CoAP request to a device response
+     *
+     * @param payload The payload of the response to the CoAP request
+     * @return The device response, or null if the payload could not be mapped
+     * @since 1.4.0
+     */
+    private DeviceResponse readResponse(byte[] payload) {
+        try {
+            return JsonCodec.read(payload, DeviceResponse.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Construct the events for a light that registered event handlers can receive
+     *
+     * @param dispatcher    The dispatcher that calls the event handlers for the light
+     * @param light         The light for which the events occurred
+     * @param oldProperties The old properties of the light
+     * @param newProperties The new properties of the light
+     * @return The events that registered event handlers can receive
+     * @since 1.4.0
+     */
+    private List<DeviceEvent> createLightEvents(EventDispatcher dispatcher, Light light, LightProperties oldProperties, LightProperties newProperties) {
+        List<DeviceEvent> events = new ArrayList<>();
+        if (dispatcher.hasEventHandlers(LightEvent.class)) {
+            events.add(new LightEvent(light));
+        }
+        int changes = PropertiesDiff.diff(oldProperties, newProperties);
+        if (changes == 0) {
+            return events;
+        }
+        if (dispatcher.hasEventHandlers(LightChangeEvent.class)) {
+            events.add(new LightChangeEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.ON) && dispatcher.hasEventHandlers(LightChangeOnEvent.class)) {
+            events.add(new LightChangeOnEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.BRIGHTNESS) && dispatcher.hasEventHandlers(LightChangeBrightnessEvent.class)) {
+            events.add(new LightChangeBrightnessEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.COLOUR_HEX) && dispatcher.hasEventHandlers(LightChangeColourHexEvent.class)) {
+            events.add(new LightChangeColourHexEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.HUE) && dispatcher.hasEventHandlers(LightChangeHueEvent.class)) {
+            events.add(new LightChangeHueEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.SATURATION) && dispatcher.hasEventHandlers(LightChangeSaturationEvent.class)) {
+            events.add(new LightChangeSaturationEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.COLOUR_X) && dispatcher.hasEventHandlers(LightChangeColourXEvent.class)) {
+            events.add(new LightChangeColourXEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.COLOUR_Y) && dispatcher.hasEventHandlers(LightChangeColourYEvent.class)) {
+            events.add(new LightChangeColourYEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.COLOUR_XY) && dispatcher.hasEventHandlers(LightChangeColourXYEvent.class)) {
+            events.add(new LightChangeColourXYEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.COLOUR) && dispatcher.hasEventHandlers(LightChangeColourEvent.class)) {
+            events.add(new LightChangeColourEvent(light, oldProperties, newProperties));
+        }
+        if (PropertiesDiff.hasChanged(changes, PropertiesDiff.COLOUR_TEMPERATURE) && dispatcher.hasEventHandlers(LightChangeColourTemperatureEvent.class)) {
+            events.add(new LightChangeColourTemperatureEvent(light, oldProperties, newProperties));
+        }
+        return events;
+    }
+
+    /**
+     * Construct the events for a plug that registered event handlers can receive
+     *
+     * @param dispatcher    The dispatcher that calls the event handlers for the plug
+     * @param plug          The plug for which the events occurred
+     * @param oldProperties The old properties of the plug
+     * @param newProperties The new properties of the plug
+     * @return The events that registered event handlers can receive
+     * @since 1.4.0
+     */
+    private List<DeviceEvent> createPlugEvents(EventDispatcher dispatcher, Plug plug, PlugProperties oldProperties, PlugProperties newProperties) {
+        List<DeviceEvent> events = new ArrayList<>();
+        if (dispatcher.hasEventHandlers(PlugEvent.class)) {
+            events.add(new PlugEvent(plug));
+        }
+        if (PropertiesDiff.diff(oldProperties, newProperties) == 0) {
+            return events;
+        }
+        if (dispatcher.hasEventHandlers(PlugChangeEvent.class)) {
+            events.add(new PlugChangeEvent(plug, oldProperties, newProperties));
+        }
+        if (dispatcher.hasEventHandlers(PlugChangeOnEvent.class)) {
+            events.add(new PlugChangeOnEvent(plug, oldProperties, newProperties));
         }
+        return events;
     }
 
 }
@@ -0,0 +1,129 @@
+package nl.stijngroenen.tradfri.device;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import nl.stijngroenen.tradfri.device.event.EventHandler;
+
+/**
+ * The class that keeps the canonical instances of the devices registered to an IKEA TRÅDFRI gateway<br>
+ * Every part of the library that resolves a device by id shares these instances, so observers and event handlers are not duplicated.
+ * The instances hold the latest known state of the devices, so they also serve as a cache of that state.
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+class DeviceRegistry {
+
+    /**
+     * The canonical instances of the devices, by instance id
+     */
+    private final ConcurrentMap<Integer, Device> devices;
+
+    /**
+     * Construct the DeviceRegistry class
+     *
+     * @since 1.4.0
+     */
+    DeviceRegistry() {
+        this.devices = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the canonical instance of a device
+     *
+     * @param id The instance id of the device
+     * @return The canonical instance of the device, or null if the device is unknown
+     * @since 1.4.0
+     */
+    Device get(int id) {
+        return devices.get(id);
+    }
+
+    /**
+     * Get the canonical instance of a device if its state can be served from the cache<br>
+     * The state of an observed device is current as long as the connection is up, the state of other devices is current until it is older than the maximum age
+     *
+     * @param id        The instance id of the device
+     * @param maxAge    The maximum age of the state of a device that is not observed (in milliseconds), or 0 to not serve devices from the cache
+     * @param connected True if the connection to the IKEA TRÅDFRI gateway is up, so observe notifications arrive
+     * @return The canonical instance of the device, or null if the device is unknown or its state has to be fetched
+     * @since 1.4.0
+     */
+    Device getCurrent(int id, long maxAge, boolean connected) {
+        Device device = devices.get(id);
+        if (device == null || maxAge == 0) {
+            return null;
+        }
+        if (connected && device.isObserved()) {
+            return device;
+        }
+        return System.currentTimeMillis() - device.getLastUpdated() <= maxAge ? device : null;
+    }
+
+    /**
+     * Register a freshly fetched device<br>
+     * If a device of the same type is already known, its state is updated and the existing instance is kept.
+     * If the type of the device changed, the fresh instance replaces the existing instance, which is no longer observed, and takes over its event handlers and observe relation.
+     *
+     * @param device The freshly fetched device
+     * @return The canonical instance of the device
+     * @since 1.4.0
+     */
+    Device register(Device device) {
+        if (device == null || device.getInstanceId() == null) {
+            return device;
+        }
+        Device[] replaced = new Device[1];
+        Device canonical = devices.merge(device.getInstanceId(), device, (existing, fresh) -> {
+            if (existing.getClass() != fresh.getClass()) {
+                replaced[0] = existing;
+                return fresh;
+            }
+            existing.setName(fresh.getName());
+            existing.setCreationDate(fresh.getCreationDate());
+            if (fresh.getProperties() != null) {
+                existing.setProperties(fresh.getProperties());
+            }
+            return existing;
+        });
+        canonical.markUpdated();
+        if (replaced[0] != null && canonical == device) {
+            takeOver(replaced[0], canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * Stop observing a replaced instance of a device, and move its event handlers and observe relation to the instance that replaces it
+     *
+     * @param replaced    The instance that was replaced
+     * @param replacement The instance that replaces it
+     * @since 1.4.0
+     */
+    private void takeOver(Device replaced, Device replacement) {
+        boolean observed = replaced.isObserved();
+        replaced.disableObserve();
+        for (EventHandler eventHandler : replaced.getEventHandlers()) {
+            replacement.addEventHandler(eventHandler);
+        }
+        replacement.setCoalescingWindow(replaced.getCoalescingWindow());
+        if (observed) {
+            replacement.enableObserve();
+        }
+    }
+
+    /**
+     * Forget a device that is no longer registered to the IKEA TRÅDFRI gateway, and stop observing it
+     *
+     * @param id The instance id of the device
+     * @since 1.4.0
+     */
+    void remove(int id) {
+        Device removed = devices.remove(id);
+        if (removed != null) {
+            removed.disableObserve();
+        }
+    }
+
+}
@@ -20,25 +20,47 @@
 package nl.stijngroenen.tradfri.device;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
+import nl.stijngroenen.tradfri.device.event.EventDispatcher;
 import nl.stijngroenen.tradfri.device.event.EventHandler;
 import nl.stijngroenen.tradfri.payload.AuthenticateRequest;
 import nl.stijngroenen.tradfri.payload.AuthenticateResponse;
+import nl.stijngroenen.tradfri.payload.DeviceRequest;
 import nl.stijngroenen.tradfri.payload.DeviceResponse;
 import nl.stijngroenen.tradfri.payload.GroupResponse;
-import nl.stijngroenen.tradfri.util.ApiEndpoint;
+import nl.stijngroenen.tradfri.util.ApiResource;
 import nl.stijngroenen.tradfri.util.CoapClient;
+import nl.stijngroenen.tradfri.util.CommandPriority;
+import nl.stijngroenen.tradfri.util.ConnectionState;
 import nl.stijngroenen.tradfri.util.Credentials;
+import nl.stijngroenen.tradfri.util.Discovery;
+import nl.stijngroenen.tradfri.util.DiscoveryListener;
+import nl.stijngroenen.tradfri.util.DiscoveryResult;
+import nl.stijngroenen.tradfri.util.GatewayEndpoints;
+import nl.stijngroenen.tradfri.util.JsonCodec;
 import org.apache.commons.lang3.RandomStringUtils;
 
 /**
- * The class that is used to communicate with the IKEA TRÅDFRI gateway
+ * The class that is used to communicate with the IKEA TRÅDFRI gateway<br>
+ * Closing the gateway stops its observers and releases its connection and threads
  *
  * @author Stijn Groenen
- * @version 1.2.0
+ * @version 1.4.0
  */
-public class Gateway {
+public class Gateway implements AutoCloseable {
+
+    /**
+     * The default maximum number of requests in flight while discovering devices and groups<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int DEFAULT_DISCOVERY_CONCURRENCY = 4;
 
     /**
      * A CoAP client that can be used to communicate with the IKEA TRÅDFRI gateway
@@ -51,9 +73,29 @@ public class Gateway {
     private GatewayObserver observer;
 
     /**
-     * The event handlers registered for the device
+     * The event handlers registered for the gateway, together with their dispatch table
+     */
+    private final EventDispatcher eventDispatcher;
+
+    /**
+     * The canonical instances of the devices registered to the IKEA TRÅDFRI gateway
+     */
+    private final DeviceRegistry deviceRegistry;
+
+    /**
+     * The maximum number of requests in flight while discovering devices and groups
+     */
+    private int discoveryConcurrency = DEFAULT_DISCOVERY_CONCURRENCY;
+
+    /**
+     * The time to wait for the list of devices to settle before handling its latest notification (in milliseconds)
+     */
+    private long coalescingWindow = Observer.DEFAULT_COALESCING_WINDOW;
+
+    /**
+     * The maximum age of the cached state of a device that is not observed (in milliseconds), or 0 to always fetch devices
      */
-    private final List<EventHandler> eventHandlers;
+    private volatile long cacheMaxAge;
 
     /**
      * Construct the Gateway class
@@ -62,9 +104,22 @@ public class Gateway {
      * @since 1.0.0
      */
     public Gateway(String ip) {
-        ApiEndpoint.setGatewayIp(ip);
-        coapClient = new CoapClient();
-        eventHandlers = new ArrayList<>();
+        this(ip, null);
+    }
+
+    /**
+     * Construct the Gateway class with an executor to handle notifications from the IKEA TRÅDFRI gateway<br>
+     * A provided executor is not shut down when the gateway is closed
+     *
+     * @param ip                   The IP-address of the IKEA TRÅDFRI gateway
+     * @param notificationExecutor The executor that handles the notifications of all observers, or null to create a bounded executor
+     * @since 1.4.0
+     */
+    public Gateway(String ip, ExecutorService notificationExecutor) {
+        JsonCodec.warmUp();
+        coapClient = new CoapClient(new GatewayEndpoints(ip), notificationExecutor);
+        eventDispatcher = new EventDispatcher();
+        deviceRegistry = new DeviceRegistry();
     }
 
     /**
@@ -79,17 +134,18 @@ public class Gateway {
         AuthenticateRequest request = new AuthenticateRequest();
         request.setIdentity(identity);
         setCredentials("Client_identity", securityCode);
-        AuthenticateResponse response = coapClient.post(ApiEndpoint.getUri(ApiEndpoint.AUTHENTICATE), request, AuthenticateResponse.class);
+        AuthenticateResponse response = coapClient.post(coapClient.getEndpoints().getAuthenticate(), request, AuthenticateResponse.class);
         if (response == null) {
             return null;
         }
         Credentials credentials = new Credentials(identity, response.getPresharedKey());
-        setCredentials(credentials);
-        return credentials;
+        return connect(credentials);
     }
 
     /**
-     * Connect and authenticate to the IKEA TRÅDFRI gateway using credentials
+     * Connect and authenticate to the IKEA TRÅDFRI gateway using credentials<br>
+     * This method waits until the secure connection is set up and the DTLS handshake is performed, so the first request does not have to wait for it.
+     * If the gateway does not answer the handshake in time, the credentials are returned anyway and the next request performs the handshake.
      *
      * @param credentials The credentials that can be used to authenticate to the IKEA TRÅDFRI gateway
      * @return Credentials that can be used to authenticate to the IKEA TRÅDFRI gateway
@@ -97,11 +153,18 @@ public class Gateway {
      */
     public Credentials connect(Credentials credentials) {
         setCredentials(credentials);
+        try {
+            coapClient.handshake().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
         return credentials;
     }
 
     /**
-     * Change the credentials used to communicate with the IKEA TRÅDFRI gateway
+     * Change the credentials used to communicate with the IKEA TRÅDFRI gateway<br>
+     * This method waits until the secure connection is set up with the new credentials
      *
      * @param credentials The new credentials that can be used to authenticate to the IKEA TRÅDFRI gateway
      * @since 1.0.0
@@ -152,6 +215,101 @@ public class Gateway {
         coapClient.setTimeout(timeout);
     }
 
+    /**
+     * Get the time after which an idle connection to the IKEA TRÅDFRI gateway is kept alive (in milliseconds)
+     *
+     * @return The keep-alive interval (in milliseconds), or 0 if the connection is not kept alive
+     * @since 1.4.0
+     */
+    public long getKeepAliveInterval() {
+        return coapClient.getKeepAliveInterval();
+    }
+
+    /**
+     * Change the time after which an idle connection to the IKEA TRÅDFRI gateway is kept alive (in milliseconds)<br>
+     * Keeping the connection alive avoids a new DTLS handshake for the first request after an idle period
+     *
+     * @param keepAliveInterval The new keep-alive interval (in milliseconds), or 0 to not keep the connection alive
+     * @since 1.4.0
+     */
+    public void setKeepAliveInterval(long keepAliveInterval) {
+        coapClient.setKeepAliveInterval(keepAliveInterval);
+    }
+
+    /**
+     * Check if writes of properties the devices and groups already have are suppressed
+     *
+     * @return True if redundant writes are suppressed, false if every write is sent
+     * @since 1.4.0
+     */
+    public boolean isSkipRedundantWrites() {
+        return coapClient.getRedundantWriteFilter().isEnabled();
+    }
+
+    /**
+     * Change if writes of properties the devices and groups already have are suppressed<br>
+     * A write is redundant if it only writes the values the IKEA TRÅDFRI gateway last reported or acknowledged. Use forceApplyUpdates to send it anyway.
+     * Only writes checked against current state are suppressed, see {@link #setRedundantWriteMaxAge(long)}.
+     *
+     * @param skipRedundantWrites True to suppress redundant writes, false to send every write
+     * @since 1.4.0
+     */
+    public void setSkipRedundantWrites(boolean skipRedundantWrites) {
+        coapClient.getRedundantWriteFilter().setEnabled(skipRedundantWrites);
+    }
+
+    /**
+     * Get the time the state received from the IKEA TRÅDFRI gateway counts as current for finding redundant writes, if the device is not observed (in milliseconds)
+     *
+     * @return The maximum state age (in milliseconds), or 0 if only the state of observed devices is trusted
+     * @since 1.4.0
+     */
+    public long getRedundantWriteMaxAge() {
+        return coapClient.getRedundantWriteFilter().getMaxStateAge();
+    }
+
+    /**
+     * Change the time the state received from the IKEA TRÅDFRI gateway counts as current for finding redundant writes, if the device is not observed (in milliseconds)<br>
+     * Writes to devices that are observed are always checked against their observed state. Writes to groups are only checked against a state fetched within this time.
+     *
+     * @param maxAge The new maximum state age (in milliseconds), or 0 to only trust the state of observed devices
+     * @since 1.4.0
+     */
+    public void setRedundantWriteMaxAge(long maxAge) {
+        coapClient.getRedundantWriteFilter().setMaxStateAge(maxAge);
+    }
+
+    /**
+     * Get the number of redundant writes that were suppressed
+     *
+     * @return The number of suppressed writes
+     * @since 1.4.0
+     */
+    public long getSuppressedWriteCount() {
+        return coapClient.getRedundantWriteFilter().getSuppressedCount();
+    }
+
+    /**
+     * Get the maximum number of requests in flight while discovering devices and groups
+     *
+     * @return The maximum number of requests in flight while discovering devices and groups
+     * @since 1.4.0
+     */
+    public int getDiscoveryConcurrency() {
+        return this.discoveryConcurrency;
+    }
+
+    /**
+     * Change the maximum number of requests in flight while discovering devices and groups<br>
+     * This should not exceed the number of parallel exchanges the IKEA TRÅDFRI gateway can handle
+     *
+     * @param discoveryConcurrency The new maximum number of requests in flight while discovering devices and groups
+     * @since 1.4.0
+     */
+    public void setDiscoveryConcurrency(int discoveryConcurrency) {
+        this.discoveryConcurrency = Math.max(discoveryConcurrency, 1);
+    }
+
     /**
      * Get the ids of the devices registered to the IKEA TRÅDFRI gateway
      *
@@ -159,18 +317,118 @@ public class Gateway {
      * @since 1.0.0
      */
     public int[] getDeviceIds() {
-        return coapClient.get(ApiEndpoint.getUri(ApiEndpoint.DEVICES), int[].class);
+        return coapClient.get(coapClient.getEndpoints().getDevices(), int[].class);
+    }
+
+    /**
+     * Get the maximum age of the cached state of a device that is not observed (in milliseconds)
+     *
+     * @return The maximum age of the cached state (in milliseconds), or 0 if devices are always fetched
+     * @since 1.4.0
+     */
+    public long getCacheMaxAge() {
+        return this.cacheMaxAge;
+    }
+
+    /**
+     * Change the maximum age of the cached state of a device that is not observed (in milliseconds)<br>
+     * Devices that were fetched within the maximum age, or that are observed while the connection is up, are returned by {@link #getDevice(int)} without a request.
+     * A maximum age of 0 fetches the device on every call.
+     *
+     * @param cacheMaxAge The new maximum age of the cached state (in milliseconds)
+     * @since 1.4.0
+     */
+    public void setCacheMaxAge(long cacheMaxAge) {
+        this.cacheMaxAge = Math.max(cacheMaxAge, 0L);
     }
 
     /**
-     * Get the a device registered to the IKEA TRÅDFRI gateway
+     * Get the a device registered to the IKEA TRÅDFRI gateway<br>
+     * The same instance is returned for every call with the same id, updated with the latest state of the device.
+     * The device is only fetched if its cached state is not current, see {@link #setCacheMaxAge(long)}
      *
      * @param id The id of a device registered to the IKEA TRÅDFRI gateway
      * @return The device with the provided id
      * @since 1.0.0
      */
     public Device getDevice(int id) {
-        DeviceResponse response = coapClient.get(ApiEndpoint.getUri(ApiEndpoint.DEVICES, String.valueOf(id)), DeviceResponse.class);
+        Device device = getCachedDevice(id);
+        if (device != null) {
+            return device;
+        }
+        return refreshDevice(id);
+    }
+
+    /**
+     * Get the a device registered to the IKEA TRÅDFRI gateway without blocking the calling thread<br>
+     * The device is only fetched if its cached state is not current, see {@link #setCacheMaxAge(long)}
+     *
+     * @param id The id of a device registered to the IKEA TRÅDFRI gateway
+     * @return A future that completes with the device with the provided id
+     * @since 1.4.0
+     */
+    public CompletableFuture<Device> getDeviceAsync(int id) {
+        Device device = getCachedDevice(id);
+        if (device != null) {
+            return CompletableFuture.completedFuture(device);
+        }
+        return refreshDeviceAsync(id);
+    }
+
+    /**
+     * Fetch the state of a device registered to the IKEA TRÅDFRI gateway, even if its cached state is current
+     *
+     * @param id The id of a device registered to the IKEA TRÅDFRI gateway
+     * @return The device with the provided id
+     * @since 1.4.0
+     */
+    public Device refreshDevice(int id) {
+        DeviceResponse response = coapClient.get(coapClient.getEndpoints().getDevice(id), DeviceResponse.class);
+        return createDevice(response);
+    }
+
+    /**
+     * Fetch the state of a device registered to the IKEA TRÅDFRI gateway without blocking the calling thread, even if its cached state is current
+     *
+     * @param id The id of a device registered to the IKEA TRÅDFRI gateway
+     * @return A future that completes with the device with the provided id
+     * @since 1.4.0
+     */
+    public CompletableFuture<Device> refreshDeviceAsync(int id) {
+        return coapClient.getAsync(coapClient.getEndpoints().getDevice(id), DeviceResponse.class)
+            .thenApply(this::createDevice);
+    }
+
+    /**
+     * Get a device from the cache if its cached state is current
+     *
+     * @param id The id of a device registered to the IKEA TRÅDFRI gateway
+     * @return The canonical instance of the device, or null if it has to be fetched
+     * @since 1.4.0
+     */
+    private Device getCachedDevice(int id) {
+        return deviceRegistry.getCurrent(id, cacheMaxAge, coapClient.getConnectionState() == ConnectionState.CONNECTED);
+    }
+
+    /**
+     * Create a device from the response of the IKEA TRÅDFRI gateway
+     *
+     * @param response The response of the IKEA TRÅDFRI gateway for a device
+     * @return The canonical instance of the device described by the response, or null if there is no response
+     * @since 1.4.0
+     */
+    private Device createDevice(DeviceResponse response) {
+        return deviceRegistry.register(newDevice(response));
+    }
+
+    /**
+     * Construct a new device from the response of the IKEA TRÅDFRI gateway
+     *
+     * @param response The response of the IKEA TRÅDFRI gateway for a device
+     * @return The device described by the response, or null if there is no response
+     * @since 1.4.0
+     */
+    private Device newDevice(DeviceResponse response) {
         if (response == null) {
             return null;
         } else if (response.getLightProperties() != null && response.getLightProperties().length > 0) {
@@ -187,24 +445,33 @@ public class Gateway {
     }
 
     /**
-     * Get the devices registered to the IKEA TRÅDFRI gateway
+     * Get the devices registered to the IKEA TRÅDFRI gateway<br>
+     * Devices that could not be fetched are left out, use {@link #discoverDevices(DiscoveryListener)} to find out which devices failed
      *
      * @return An array of the devices registered to the IKEA TRÅDFRI gateway
      * @since 1.0.0
      */
     public Device[] getDevices() {
-        ArrayList<Device> deviceList = new ArrayList<>();
+        DiscoveryResult<Device> result = discoverDevices(null);
+        if (result == null) {
+            return null;
+        }
+        return result.getResults().toArray(new Device[0]);
+    }
+
+    /**
+     * Discover the devices registered to the IKEA TRÅDFRI gateway, fetching up to {@link #getDiscoveryConcurrency()} devices at the same time
+     *
+     * @param listener The listener that receives progress updates, or null
+     * @return The result of the discovery, or null if the ids of the devices could not be fetched
+     * @since 1.4.0
+     */
+    public DiscoveryResult<Device> discoverDevices(DiscoveryListener listener) {
         int[] deviceIds = getDeviceIds();
         if (deviceIds == null) {
             return null;
         }
-        for (int deviceId : deviceIds) {
-            Device device = getDevice(deviceId);
-            deviceList.add(device);
-        }
-        Device[] devices = new Device[deviceList.size()];
-        deviceList.toArray(devices);
-        return devices;
+        return Discovery.discover(deviceIds, discoveryConcurrency, this::getDeviceAsync, listener).join();
     }
 
     /**
@@ -214,26 +481,39 @@ public class Gateway {
      * @since 1.3.0
      */
     public int[] getGroupIds() {
-        return coapClient.get(ApiEndpoint.getUri(ApiEndpoint.GROUPS), int[].class);
+        return coapClient.get(coapClient.getEndpoints().getGroups(), int[].class);
     }
 
     /**
-     * Get the groups registered to the IKEA TRÅDFRI gateway
+     * Get the groups registered to the IKEA TRÅDFRI gateway<br>
+     * Groups that could not be fetched are left out, use {@link #discoverGroups(DiscoveryListener)} to find out which groups failed
      *
      * @return An array of the groups registered to the IKEA TRÅDFRI gateway
      * @since 1.3.0
      */
     public Group[] getGroups() {
-        ArrayList<Group> groupList = new ArrayList<>();
+        DiscoveryResult<Group> result = discoverGroups(null);
+        if (result == null) {
+            return null;
+        }
+        return result.getResults().toArray(new Group[0]);
+    }
+
+    /**
+     * Discover the groups registered to the IKEA TRÅDFRI gateway, fetching up to {@link #getDiscoveryConcurrency()} groups at the same time<br>
+     * Devices belonging to several groups are fetched only once
+     *
+     * @param listener The listener that receives progress updates, or null
+     * @return The result of the discovery, or null if the ids of the groups could not be fetched
+     * @since 1.4.0
+     */
+    public DiscoveryResult<Group> discoverGroups(DiscoveryListener listener) {
         int[] groupIds = getGroupIds();
         if (groupIds == null) {
             return null;
         }
-        for (int groupId : groupIds) {
-            Group group = getGroup(groupId);
-            groupList.add(group);
-        }
-        return groupList.toArray(new Group[groupList.size()]);
+        Map<Integer, CompletableFuture<Device>> fetchedDevices = new ConcurrentHashMap<>();
+        return Discovery.discover(groupIds, discoveryConcurrency, groupId -> getGroupAsync(groupId, fetchedDevices), listener).join();
     }
 
     /**
@@ -244,12 +524,151 @@ public class Gateway {
      * @since 1.3.0
      */
     public Group getGroup(int groupId) {
-        List<Device> devices = new ArrayList<>();
-        GroupResponse response = coapClient.get(ApiEndpoint.getUri(ApiEndpoint.GROUPS, String.valueOf(groupId)), GroupResponse.class);
-        for (Integer id : response.getDeviceIds()) {
-            devices.add(getDevice(id));
+        GroupResponse response = coapClient.get(coapClient.getEndpoints().getGroup(groupId), GroupResponse.class);
+        if (response == null) {
+            return null;
+        }
+        return createGroup(response, new ConcurrentHashMap<>()).join();
+    }
+
+    /**
+     * Get a group registered to the IKEA TRÅDFRI gateway without blocking the calling thread
+     *
+     * @param groupId The id of a group registered to the IKEA TRÅDFRI gateway
+     * @return A future that completes with the group with the provided id
+     * @since 1.4.0
+     */
+    public CompletableFuture<Group> getGroupAsync(int groupId) {
+        return getGroupAsync(groupId, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Get a group registered to the IKEA TRÅDFRI gateway without blocking the calling thread
+     *
+     * @param groupId        The id of a group registered to the IKEA TRÅDFRI gateway
+     * @param fetchedDevices The devices fetched during the current discovery pass, by id
+     * @return A future that completes with the group with the provided id
+     * @since 1.4.0
+     */
+    private CompletableFuture<Group> getGroupAsync(int groupId, Map<Integer, CompletableFuture<Device>> fetchedDevices) {
+        return coapClient.getAsync(coapClient.getEndpoints().getGroup(groupId), GroupResponse.class)
+            .thenCompose(response -> createGroup(response, fetchedDevices));
+    }
+
+    /**
+     * Create a group from the response of the IKEA TRÅDFRI gateway, resolving the devices belonging to the group to their canonical instances
+     *
+     * @param response       The response of the IKEA TRÅDFRI gateway for a group
+     * @param fetchedDevices The devices fetched during the current discovery pass, by id
+     * @return A future that completes with the group described by the response
+     * @since 1.4.0
+     */
+    private CompletableFuture<Group> createGroup(GroupResponse response, Map<Integer, CompletableFuture<Device>> fetchedDevices) {
+        int[] deviceIds = response.getDeviceIds().stream().mapToInt(Integer::intValue).toArray();
+        return Discovery.discover(deviceIds, discoveryConcurrency, id -> fetchedDevices.computeIfAbsent(id, this::getDeviceAsync), null).thenApply(result -> {
+            List<Device> devices = new ArrayList<>(result.getResults());
+            return new Group(response.getName(), response.getInstanceId(), response.getCreationDate(), devices, response.getGroupProperties(), coapClient);
+        });
+    }
+
+    /**
+     * Apply updates to several lights and plugs at once
+     *
+     * @param updates The new properties of the devices ({@link LightProperties} for lights, {@link PlugProperties} for plugs), by device id
+     * @return True if successfully updated the device, false if not, by device id
+     * @since 1.4.0
+     */
+    public Map<Integer, Boolean> applyUpdates(Map<Integer, ? extends DeviceProperties> updates) {
+        return applyUpdatesAsync(updates).join();
+    }
+
+    /**
+     * Apply updates to several lights and plugs at once without blocking the calling thread
+     *
+     * @param updates The new properties of the devices ({@link LightProperties} for lights, {@link PlugProperties} for plugs), by device id
+     * @return A future that completes with true if successfully updated the device, false if not, by device id
+     * @since 1.4.0
+     */
+    public CompletableFuture<Map<Integer, Boolean>> applyUpdatesAsync(Map<Integer, ? extends DeviceProperties> updates) {
+        return applyUpdatesAsync(updates, CommandPriority.INTERACTIVE);
+    }
+
+    /**
+     * Apply updates to several lights and plugs at once without blocking the calling thread<br>
+     * The updates are sent together, as many at the same time as the IKEA TRÅDFRI gateway allows, so the devices change at nearly the same moment.
+     * An update of a known light is submitted to the write-behind buffer of the light, so it is merged with the pending update of the light and written after it,
+     * an update of a known plug is written like any other update of the plug, and both pass the {@link nl.stijngroenen.tradfri.util.RedundantWriteFilter}.
+     * Updates of devices that were not fetched yet are written directly.
+     * Updates of properties of another type than {@link LightProperties} or {@link PlugProperties} fail.
+     * When a rate limit is set on the {@link nl.stijngroenen.tradfri.util.CommandScheduler}, every update counts as a separate command,
+     * and updates that do not fit in the queue of their priority lane fail as well.
+     *
+     * @param updates  The new properties of the devices ({@link LightProperties} for lights, {@link PlugProperties} for plugs), by device id
+     * @param priority The priority of the updates
+     * @return A future that completes with true if successfully updated the device, false if not, by device id
+     * @since 1.4.0
+     */
+    public CompletableFuture<Map<Integer, Boolean>> applyUpdatesAsync(Map<Integer, ? extends DeviceProperties> updates, CommandPriority priority) {
+        Map<Integer, CompletableFuture<Boolean>> submitted = new LinkedHashMap<>();
+        Map<ApiResource, DeviceRequest> payloads = new LinkedHashMap<>();
+        for (Map.Entry<Integer, ? extends DeviceProperties> update : updates.entrySet()) {
+            Device device = deviceRegistry.get(update.getKey());
+            DeviceProperties properties = update.getValue();
+            if (device instanceof Light && properties instanceof LightProperties) {
+                submitted.put(update.getKey(), ((Light) device).submitUpdate((LightProperties) properties, priority));
+            } else if (device instanceof Plug && properties instanceof PlugProperties) {
+                submitted.put(update.getKey(), ((Plug) device).submitUpdate((PlugProperties) properties, priority));
+            } else {
+                DeviceRequest request = createDeviceRequest(properties);
+                if (request != null) {
+                    payloads.put(coapClient.getEndpoints().getDevice(update.getKey()), request);
+                }
+            }
+        }
+        Map<ApiResource, CompletableFuture<String>> responses = coapClient.putAllAsync(payloads, String.class, priority);
+        Map<Integer, CompletableFuture<Boolean>> results = new LinkedHashMap<>();
+        for (Integer id : updates.keySet()) {
+            CompletableFuture<Boolean> success = submitted.get(id);
+            if (success == null) {
+                CompletableFuture<String> response = responses.get(coapClient.getEndpoints().getDevice(id));
+                success = response == null ? CompletableFuture.completedFuture(false) : response.handle((result, error) -> error == null && result != null);
+            }
+            results.put(id, success.exceptionally(error -> false));
+        }
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<Integer, Boolean> result = new LinkedHashMap<>();
+            results.forEach((id, success) -> result.put(id, success.join()));
+            return result;
+        });
+    }
+
+    /**
+     * Create the request that writes new properties to a device
+     *
+     * @param properties The new properties of the device
+     * @return The request, or null if the properties are not the properties of a light or a plug
+     * @since 1.4.0
+     */
+    private DeviceRequest createDeviceRequest(DeviceProperties properties) {
+        DeviceRequest request = new DeviceRequest();
+        if (properties instanceof LightProperties) {
+            request.setLightProperties(new LightProperties[]{(LightProperties) properties});
+        } else if (properties instanceof PlugProperties) {
+            request.setPlugProperties(new PlugProperties[]{(PlugProperties) properties});
+        } else {
+            return null;
         }
-        return new Group(response.getName(), response.getInstanceId(), response.getCreationDate(), devices, response.getGroupProperties(), coapClient);
+        return request;
+    }
+
+    /**
+     * Get the canonical instances of the devices registered to the IKEA TRÅDFRI gateway
+     *
+     * @return The canonical instances of the devices registered to the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    DeviceRegistry getDeviceRegistry() {
+        return deviceRegistry;
     }
 
     /**
@@ -261,6 +680,7 @@ public class Gateway {
     public boolean enableObserve() {
         if (observer == null) {
             observer = new GatewayObserver(this, this.coapClient);
+            observer.setCoalescingWindow(coalescingWindow);
         }
         return observer.start();
     }
@@ -278,6 +698,30 @@ public class Gateway {
         return observer.stop();
     }
 
+    /**
+     * Get the time to wait for the list of devices to settle before handling its latest notification (in milliseconds)
+     *
+     * @return The coalescing window (in milliseconds)
+     * @since 1.4.0
+     */
+    public long getCoalescingWindow() {
+        return this.coalescingWindow;
+    }
+
+    /**
+     * Change the time to wait for the list of devices to settle before handling its latest notification (in milliseconds)<br>
+     * A window of 0 calls the event handlers as soon as a notification arrives.
+     *
+     * @param coalescingWindow The new coalescing window (in milliseconds)
+     * @since 1.4.0
+     */
+    public void setCoalescingWindow(long coalescingWindow) {
+        this.coalescingWindow = Math.max(coalescingWindow, 0L);
+        if (observer != null) {
+            observer.setCoalescingWindow(this.coalescingWindow);
+        }
+    }
+
     /**
      * Get a list of event handlers for the IKEA TRÅDFRI gateway
      *
@@ -285,7 +729,17 @@ public class Gateway {
      * @since 1.0.0
      */
     public List<EventHandler> getEventHandlers() {
-        return eventHandlers;
+        return eventDispatcher.getEventHandlers();
+    }
+
+    /**
+     * Get the dispatcher that calls the event handlers for the IKEA TRÅDFRI gateway
+     *
+     * @return The dispatcher that calls the event handlers for the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
     }
 
     /**
@@ -295,7 +749,7 @@ public class Gateway {
      * @since 1.0.0
      */
     public void addEventHandler(EventHandler eventHandler) {
-        this.eventHandlers.add(eventHandler);
+        this.eventDispatcher.addEventHandler(eventHandler);
     }
 
     /**
@@ -305,7 +759,20 @@ public class Gateway {
      * @since 1.0.0
      */
     public void removeEventHandler(EventHandler eventHandler) {
-        this.eventHandlers.remove(eventHandler);
+        this.eventDispatcher.removeEventHandler(eventHandler);
+    }
+
+    /**
+     * Close the connection to the IKEA TRÅDFRI gateway<br>
+     * All observers of the gateway and its devices are stopped, queued commands are cancelled and the threads of the CoAP client are shut down.
+     * The gateway cannot be used anymore afterwards.
+     *
+     * @since 1.4.0
+     */
+    @Override
+    public void close() {
+        disableObserve();
+        coapClient.shutdown();
     }
 
 }
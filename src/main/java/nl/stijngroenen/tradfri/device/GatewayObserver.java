@@ -19,23 +19,22 @@
 
 package nl.stijngroenen.tradfri.device;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.stijngroenen.tradfri.device.event.DeviceAddedEvent;
 import nl.stijngroenen.tradfri.device.event.DeviceRemovedEvent;
-import nl.stijngroenen.tradfri.device.event.EventHandler;
 import nl.stijngroenen.tradfri.device.event.GatewayEvent;
-import nl.stijngroenen.tradfri.util.ApiEndpoint;
 import nl.stijngroenen.tradfri.util.CoapClient;
+import nl.stijngroenen.tradfri.util.JsonCodec;
 
 /**
  * The class that observes an IKEA TRÅDFRI gateway to automagically detect changes
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
 public class GatewayObserver extends Observer {
 
@@ -49,11 +48,6 @@ public class GatewayObserver extends Observer {
      */
     private HashMap<Integer, Device> devices;
 
-    /**
-     * An object mapper used for mapping JSON responses from the IKEA TRÅDFRI gateway to Java classes
-     */
-    private final ObjectMapper objectMapper;
-
     /**
      * Construct the GatewayObserver class
      *
@@ -62,9 +56,8 @@ public class GatewayObserver extends Observer {
      * @since 1.0.0
      */
     public GatewayObserver(Gateway gateway, CoapClient coapClient) {
-        super(ApiEndpoint.getUri(ApiEndpoint.DEVICES), coapClient);
+        super(coapClient.getEndpoints().getDevices(), coapClient);
         this.gateway = gateway;
-        this.objectMapper = new ObjectMapper();
     }
 
     /**
@@ -91,10 +84,20 @@ public class GatewayObserver extends Observer {
      */
     @Override
     public void callEventHandlers(String payload) {
+        callEventHandlers(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Handles a new response from the CoAP client and calls the appropriate event handlers for the IKEA TRÅDFRI gateway
+     *
+     * @param payload The payload of the response to the CoAP request
+     * @since 1.4.0
+     */
+    @Override
+    public void callEventHandlers(byte[] payload) {
         try {
-            int[] deviceIds = objectMapper.readValue(payload, int[].class);
+            int[] deviceIds = JsonCodec.read(payload, int[].class);
             ArrayList<GatewayEvent> events = new ArrayList<>();
-            ArrayList<EventHandler> called = new ArrayList<>();
             events.add(new GatewayEvent(gateway));
             ArrayList<Integer> added = new ArrayList<>();
             HashMap<Integer, Device> removed = (HashMap<Integer, Device>) devices.clone();
@@ -106,24 +109,18 @@ public class GatewayObserver extends Observer {
                 }
             }
             for (Integer addedDeviceId : added) {
-                Device device = gateway.getDevice(addedDeviceId);
+                Device device = gateway.refreshDevice(addedDeviceId);
                 devices.put(addedDeviceId, device);
                 events.add(new DeviceAddedEvent(gateway, device));
             }
             for (Integer removedDeviceId : removed.keySet()) {
                 Device device = devices.get(removedDeviceId);
                 devices.remove(removedDeviceId);
+                gateway.getDeviceRegistry().remove(removedDeviceId);
                 events.add(new DeviceRemovedEvent(gateway, device));
             }
-            for (EventHandler eventHandler : gateway.getEventHandlers()) {
-                for (GatewayEvent event : events) {
-                    if (eventHandler.getEventType().isAssignableFrom(event.getClass()) && !called.contains(eventHandler)) {
-                        eventHandler.handle(event);
-                        called.add(eventHandler);
-                    }
-                }
-            }
-        } catch (JsonProcessingException ignored) {
+            gateway.getEventDispatcher().dispatch(events);
+        } catch (IOException ignored) {
         }
     }
 
@@ -1,10 +1,12 @@
 package nl.stijngroenen.tradfri.device;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import nl.stijngroenen.tradfri.payload.GroupRequest;
-import nl.stijngroenen.tradfri.util.ApiEndpoint;
+import nl.stijngroenen.tradfri.util.ApiResource;
 import nl.stijngroenen.tradfri.util.CoapClient;
+import nl.stijngroenen.tradfri.util.CommandPriority;
 
 /**
  * The class that represents an IKEA TRÅDFRI group
@@ -49,6 +51,26 @@ public class Group {
      */
     private final CoapClient coapClient;
 
+    /**
+     * The buffer that merges updates to the group before they are sent to the IKEA TRÅDFRI gateway
+     */
+    private final WriteBehindBuffer<GroupProperties> writeBuffer;
+
+    /**
+     * True if updates are sent to the group without waiting for an acknowledgement, false if not
+     */
+    private volatile boolean nonConfirmable;
+
+    /**
+     * The state of the group the IKEA TRÅDFRI gateway reported when the group was fetched, used to find redundant writes, or null once the group was written
+     */
+    private GroupProperties confirmedProperties;
+
+    /**
+     * The time the state of the group was fetched from the IKEA TRÅDFRI gateway (in milliseconds since the epoch)
+     */
+    private final long fetchedAt;
+
     /**
      * Construct the Group class
      *
@@ -66,8 +88,11 @@ public class Group {
         this.creationDate = creationDate;
         this.devices = devices;
         this.properties = properties;
+        this.confirmedProperties = PropertiesMerge.copy(properties);
+        this.fetchedAt = System.currentTimeMillis();
         this.coapClient = coapClient;
         this.newProperties = new GroupProperties();
+        this.writeBuffer = new WriteBehindBuffer<>(coapClient.getScheduler(), this::writeUpdate, PropertiesMerge::merge, PropertiesMerge::isSameWrite);
     }
 
     /**
@@ -100,6 +125,16 @@ public class Group {
         return instanceId;
     }
 
+    /**
+     * Get the resource of the group on its IKEA TRÅDFRI gateway
+     *
+     * @return The resource of the group
+     * @since 1.4.0
+     */
+    public ApiResource getResource() {
+        return coapClient.getEndpoints().getGroup(getInstanceId());
+    }
+
     /**
      * Get the creation date of the group
      *
@@ -268,13 +303,118 @@ public class Group {
      * @since 1.3.0
      */
     private boolean applyUpdate(GroupProperties newProperties) {
+        return writeBuffer.submit(newProperties, CommandPriority.INTERACTIVE).join();
+    }
+
+    /**
+     * Apply updates to the group without blocking the calling thread
+     *
+     * @param newProperties The new properties to apply to the group
+     * @return A future that completes with true if successfully updated the group, false if not
+     * @since 1.4.0
+     */
+    private CompletableFuture<Boolean> applyUpdateAsync(GroupProperties newProperties) {
+        return writeBuffer.submit(newProperties, CommandPriority.INTERACTIVE);
+    }
+
+    /**
+     * Write updates to the group using the IKEA TRÅDFRI gateway<br>
+     * A write that does not change the confirmed state of the group is suppressed if the {@link nl.stijngroenen.tradfri.util.RedundantWriteFilter} is enabled, unless it is forced
+     *
+     * @param newProperties The new properties to write to the group
+     * @param priority      The priority of the update
+     * @param force         True to write the update even if it is redundant, false if not
+     * @return A future that completes with true if successfully updated the group, false if not
+     * @since 1.4.0
+     */
+    private CompletableFuture<Boolean> writeUpdate(GroupProperties newProperties, CommandPriority priority, boolean force) {
+        if (!force && coapClient.getRedundantWriteFilter().suppress(isRedundant(newProperties))) {
+            return CompletableFuture.completedFuture(true);
+        }
         GroupRequest request = new GroupRequest(newProperties);
-        String response = coapClient.put(ApiEndpoint.getUri(ApiEndpoint.GROUPS, String.valueOf(getInstanceId())), request, String.class);
-        return response != null;
+        if (nonConfirmable) {
+            return coapClient.putNonConfirmableAsync(getResource(), request, priority).handle((sent, error) -> error == null && Boolean.TRUE.equals(sent));
+        }
+        return coapClient.putAsync(getResource(), request, String.class, priority).handle((response, error) -> {
+            boolean success = error == null && response != null;
+            if (success) {
+                confirm(newProperties);
+            }
+            return success;
+        });
     }
 
     /**
-     * Apply the updates in the update queue to the group
+     * Check if an update does not change the state of the group the IKEA TRÅDFRI gateway reported when the group was fetched<br>
+     * Groups are not observed, so only a state fetched within the maximum state age counts, and only until the group is written.
+     * The member devices can be changed by others in the meantime, so the state of the group cannot be derived from the writes of this client.
+     *
+     * @param newProperties The new properties to write to the group
+     * @return True if the update is redundant, false if not
+     * @since 1.4.0
+     */
+    private synchronized boolean isRedundant(GroupProperties newProperties) {
+        return confirmedProperties != null && coapClient.getRedundantWriteFilter().isCurrent(fetchedAt) && PropertiesMerge.isRedundant(confirmedProperties, newProperties);
+    }
+
+    /**
+     * Record that the IKEA TRÅDFRI gateway acknowledged an update of the group<br>
+     * The fetched state is no longer used to find redundant writes, as it does not show what the member devices do after the write
+     *
+     * @param newProperties The properties that were written to the group
+     * @since 1.4.0
+     */
+    private synchronized void confirm(GroupProperties newProperties) {
+        confirmedProperties = null;
+    }
+
+    /**
+     * Check if updates are sent to the group without waiting for an acknowledgement
+     *
+     * @return True if updates are sent non-confirmable, false if they are acknowledged by the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public boolean isNonConfirmable() {
+        return this.nonConfirmable;
+    }
+
+    /**
+     * Change if updates are sent to the group without waiting for an acknowledgement<br>
+     * Non-confirmable updates are not retransmitted, and report success as soon as they are sent. They suit animations, where only the latest update matters.
+     * Combine them with a write interval to limit the number of updates sent to the IKEA TRÅDFRI gateway.
+     *
+     * @param nonConfirmable True to send updates non-confirmable, false to have them acknowledged by the IKEA TRÅDFRI gateway (default)
+     * @since 1.4.0
+     */
+    public void setNonConfirmable(boolean nonConfirmable) {
+        this.nonConfirmable = nonConfirmable;
+    }
+
+    /**
+     * Get the minimum time between two updates sent to the group (in milliseconds)
+     *
+     * @return The write interval (in milliseconds)
+     * @since 1.4.0
+     */
+    public long getWriteInterval() {
+        return writeBuffer.getWriteInterval();
+    }
+
+    /**
+     * Change the minimum time between two updates sent to the group (in milliseconds)<br>
+     * Updates made within the interval are merged, the last value of every property wins.
+     * An interval of 0 sends the merged updates as soon as the previous update has completed.
+     *
+     * @param writeInterval The new write interval (in milliseconds)
+     * @since 1.4.0
+     */
+    public void setWriteInterval(long writeInterval) {
+        writeBuffer.setWriteInterval(writeInterval);
+    }
+
+    /**
+     * Apply the updates in the update queue to the group<br>
+     * The update also fails if a rate limit is set on the {@link nl.stijngroenen.tradfri.util.CommandScheduler} and its queue is full
      *
      * @return True if successfully updated the group, false if not
      * @since 1.3.0
@@ -296,4 +436,66 @@ public class Group {
         newProperties.setTransitionTime(transitionTime);
         return applyUpdates();
     }
+
+    /**
+     * Apply the updates in the update queue to the group without blocking the calling thread
+     *
+     * @return A future that completes with true if successfully updated the group, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> applyUpdatesAsync() {
+        CompletableFuture<Boolean> success = applyUpdateAsync(newProperties);
+        newProperties = new GroupProperties();
+        return success;
+    }
+
+    /**
+     * Apply the updates in the update queue to the group without blocking the calling thread
+     *
+     * @param transitionTime The transition time for updating the group
+     * @return A future that completes with true if successfully updated the group, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> applyUpdatesAsync(Integer transitionTime) {
+        newProperties.setTransitionTime(transitionTime);
+        return applyUpdatesAsync();
+    }
+
+    /**
+     * Apply the updates in the update queue to the group without blocking the calling thread<br>
+     * Use {@link CommandPriority#BACKGROUND} for automated updates, so they do not delay updates made by a user.
+     * When a rate limit is set on the {@link nl.stijngroenen.tradfri.util.CommandScheduler}, the update completes with false if its priority lane is full.
+     *
+     * @param priority The priority of the update
+     * @return A future that completes with true if successfully updated the group, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> applyUpdatesAsync(CommandPriority priority) {
+        CompletableFuture<Boolean> success = writeBuffer.submit(newProperties, priority);
+        newProperties = new GroupProperties();
+        return success;
+    }
+
+    /**
+     * Apply the updates in the update queue to the group, even if the group already has the state they write
+     *
+     * @return True if successfully updated the group, false if not
+     * @since 1.4.0
+     */
+    public boolean forceApplyUpdates() {
+        return forceApplyUpdatesAsync().join();
+    }
+
+    /**
+     * Apply the updates in the update queue to the group without blocking the calling thread, even if the group already has the state they write
+     *
+     * @return A future that completes with true if successfully updated the group, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> forceApplyUpdatesAsync() {
+        CompletableFuture<Boolean> success = writeBuffer.submit(newProperties, CommandPriority.INTERACTIVE, true);
+        newProperties = new GroupProperties();
+        return success;
+    }
+
 }
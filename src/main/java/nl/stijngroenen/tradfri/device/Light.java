@@ -19,9 +19,11 @@
 
 package nl.stijngroenen.tradfri.device;
 
+import java.util.concurrent.CompletableFuture;
+
 import nl.stijngroenen.tradfri.payload.DeviceRequest;
-import nl.stijngroenen.tradfri.util.ApiEndpoint;
 import nl.stijngroenen.tradfri.util.CoapClient;
+import nl.stijngroenen.tradfri.util.CommandPriority;
 import nl.stijngroenen.tradfri.util.ColourRGB;
 import nl.stijngroenen.tradfri.util.ColourXY;
 
@@ -29,20 +31,40 @@ import nl.stijngroenen.tradfri.util.ColourXY;
  * The class that represents an IKEA TRÅDFRI light
  *
  * @author Stijn Groenen
- * @version 1.1.0
+ * @version 1.4.0
  */
 public class Light extends Device {
 
     /**
-     * The current properties of the light
+     * The current properties of the light, including the acknowledged updates the IKEA TRÅDFRI gateway has not reported yet
      */
-    private LightProperties properties;
+    private volatile LightProperties properties;
+
+    /**
+     * The properties of the light as last reported by the IKEA TRÅDFRI gateway
+     */
+    private LightProperties reportedProperties;
+
+    /**
+     * The acknowledged updates of the light the IKEA TRÅDFRI gateway has not reported yet, or null
+     */
+    private LightProperties pendingProperties;
 
     /**
      * The new properties of the light in the update queue
      */
     private LightProperties newProperties;
 
+    /**
+     * The buffer that merges updates to the light before they are sent to the IKEA TRÅDFRI gateway
+     */
+    private final WriteBehindBuffer<LightProperties> writeBuffer;
+
+    /**
+     * True if updates are sent to the light without waiting for an acknowledgement, false if not
+     */
+    private volatile boolean nonConfirmable;
+
     /**
      * Construct the Light class
      *
@@ -57,7 +79,9 @@ public class Light extends Device {
     public Light(String name, Long creationDate, Integer instanceId, DeviceInfo deviceInfo, LightProperties properties, CoapClient coapClient) {
         super(name, creationDate, instanceId, deviceInfo, coapClient);
         this.properties = properties;
+        this.reportedProperties = properties;
         this.newProperties = new LightProperties();
+        this.writeBuffer = new WriteBehindBuffer<>(coapClient.getScheduler(), this::writeUpdate, PropertiesMerge::merge, PropertiesMerge::isSameWrite);
     }
 
     /**
@@ -72,7 +96,8 @@ public class Light extends Device {
     }
 
     /**
-     * Set the properties of the light
+     * Set the properties of the light, as reported by the IKEA TRÅDFRI gateway<br>
+     * Acknowledged updates that were not reported yet are replaced by the reported properties
      *
      * @param properties The properties of the light
      * @since 1.0.0
@@ -80,7 +105,7 @@ public class Light extends Device {
     @Override
     public void setProperties(DeviceProperties properties) {
         if (properties instanceof LightProperties) {
-            this.properties = (LightProperties) properties;
+            reconcile((LightProperties) properties);
         }
     }
 
@@ -382,6 +407,32 @@ public class Light extends Device {
         return setBrightness(brightness, null);
     }
 
+    /**
+     * Set the brightness of the light without blocking the calling thread
+     *
+     * @param brightness     The new brightness for the light
+     * @param transitionTime The transition time for updating the light
+     * @return A future that completes with true if successfully updated the brightness of the light, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> setBrightnessAsync(Integer brightness, Integer transitionTime) {
+        LightProperties newProperties = new LightProperties();
+        newProperties.setBrightness(brightness);
+        newProperties.setTransitionTime(transitionTime);
+        return applyUpdateAsync(newProperties);
+    }
+
+    /**
+     * Set the brightness of the light without blocking the calling thread
+     *
+     * @param brightness The new brightness for the light
+     * @return A future that completes with true if successfully updated the brightness of the light, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> setBrightnessAsync(Integer brightness) {
+        return setBrightnessAsync(brightness, null);
+    }
+
     /**
      * Set the colour of the light to a predefined hexadecimal colour<br>
      * Available colours:<br>
@@ -606,14 +657,186 @@ public class Light extends Device {
      * @since 1.0.0
      */
     private boolean applyUpdate(LightProperties newProperties) {
+        return writeBuffer.submit(newProperties, CommandPriority.INTERACTIVE).join();
+    }
+
+    /**
+     * Apply updates to the light without blocking the calling thread
+     *
+     * @param newProperties The new properties to apply to the light
+     * @return A future that completes with true if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    private CompletableFuture<Boolean> applyUpdateAsync(LightProperties newProperties) {
+        return writeBuffer.submit(newProperties, CommandPriority.INTERACTIVE);
+    }
+
+    /**
+     * Submit an update to the write-behind buffer of the light, as part of an update of several devices at once<br>
+     * The update is merged with the pending update of the light and passes the {@link nl.stijngroenen.tradfri.util.RedundantWriteFilter} like any other update
+     *
+     * @param update   The new properties to apply to the light, which are copied
+     * @param priority The priority of the update
+     * @return A future that completes with true if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    CompletableFuture<Boolean> submitUpdate(LightProperties update, CommandPriority priority) {
+        return writeBuffer.submit(PropertiesMerge.copy(update), priority);
+    }
+
+    /**
+     * Write updates to the light using the IKEA TRÅDFRI gateway<br>
+     * A write that does not change the confirmed state of the light is suppressed if the {@link nl.stijngroenen.tradfri.util.RedundantWriteFilter} is enabled, unless it is forced
+     *
+     * @param newProperties The new properties to write to the light
+     * @param priority      The priority of the update
+     * @param force         True to write the update even if it is redundant, false if not
+     * @return A future that completes with true if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    private CompletableFuture<Boolean> writeUpdate(LightProperties newProperties, CommandPriority priority, boolean force) {
+        if (!force && coapClient.getRedundantWriteFilter().suppress(isRedundant(newProperties))) {
+            return CompletableFuture.completedFuture(true);
+        }
         DeviceRequest request = new DeviceRequest();
         request.setLightProperties(new LightProperties[]{newProperties});
-        String response = coapClient.put(ApiEndpoint.getUri(ApiEndpoint.DEVICES, String.valueOf(getInstanceId())), request, String.class);
-        return response != null;
+        if (nonConfirmable) {
+            return coapClient.putNonConfirmableAsync(getResource(), request, priority).handle((sent, error) -> error == null && Boolean.TRUE.equals(sent));
+        }
+        return coapClient.putAsync(getResource(), request, String.class, priority).handle((response, error) -> {
+            boolean success = error == null && response != null;
+            if (success) {
+                confirm(newProperties);
+            }
+            return success;
+        });
     }
 
     /**
-     * Apply the updates in the update queue to the light
+     * Check if an update does not change the state of the light the IKEA TRÅDFRI gateway reported or acknowledged
+     *
+     * @param newProperties The new properties to write to the light
+     * @return True if the update is redundant, false if not, or if the state of the light is not known to be current
+     * @since 1.4.0
+     */
+    private synchronized boolean isRedundant(LightProperties newProperties) {
+        return isStateCurrent() && PropertiesMerge.isRedundant(properties, newProperties);
+    }
+
+    /**
+     * Apply an update the IKEA TRÅDFRI gateway acknowledged to the properties of the light right away<br>
+     * The update is pending until the gateway reports the properties of the light, unless the gateway already reported them.
+     * Only the written properties of the light change, while the pending updates only expect the colour mode that was written last.
+     *
+     * @param newProperties The properties that were written to the light
+     * @since 1.4.0
+     */
+    synchronized void confirm(LightProperties newProperties) {
+        if (properties == null || (pendingProperties == null && PropertiesMerge.isRedundant(reportedProperties, newProperties))) {
+            return;
+        }
+        LightProperties optimisticProperties = PropertiesMerge.copy(properties);
+        PropertiesMerge.overlay(optimisticProperties, newProperties);
+        if (pendingProperties == null) {
+            pendingProperties = new LightProperties();
+        }
+        PropertiesMerge.merge(pendingProperties, newProperties);
+        pendingProperties.setTransitionTime(null);
+        properties = optimisticProperties;
+    }
+
+    /**
+     * Replace the properties of the light with the properties reported by the IKEA TRÅDFRI gateway
+     *
+     * @param reported The properties reported by the IKEA TRÅDFRI gateway
+     * @return The properties the light was expected to have if the gateway reported different values for pending updates, or null if it agreed
+     * @since 1.4.0
+     */
+    synchronized LightProperties reconcile(LightProperties reported) {
+        LightProperties expected = pendingProperties != null && !PropertiesMerge.isRedundant(reported, pendingProperties) ? properties : null;
+        reportedProperties = reported;
+        pendingProperties = null;
+        properties = reported;
+        return expected;
+    }
+
+    /**
+     * Get the properties of the light as last reported by the IKEA TRÅDFRI gateway, without the pending updates
+     *
+     * @return The reported properties of the light
+     * @since 1.4.0
+     */
+    synchronized LightProperties getReportedProperties() {
+        return this.reportedProperties;
+    }
+
+    /**
+     * Check if updates were acknowledged by the IKEA TRÅDFRI gateway that it has not reported yet
+     *
+     * @return True if the properties of the light contain pending updates, false if they are as reported
+     * @since 1.4.0
+     */
+    public synchronized boolean hasPendingUpdates() {
+        return pendingProperties != null;
+    }
+
+    /**
+     * Get the updates that were acknowledged by the IKEA TRÅDFRI gateway, but that it has not reported yet
+     *
+     * @return A copy of the pending updates, or null if there are none
+     * @since 1.4.0
+     */
+    public synchronized LightProperties getPendingUpdates() {
+        return PropertiesMerge.copy(pendingProperties);
+    }
+
+    /**
+     * Check if updates are sent to the light without waiting for an acknowledgement
+     *
+     * @return True if updates are sent non-confirmable, false if they are acknowledged by the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public boolean isNonConfirmable() {
+        return this.nonConfirmable;
+    }
+
+    /**
+     * Change if updates are sent to the light without waiting for an acknowledgement<br>
+     * Non-confirmable updates are not retransmitted, and report success as soon as they are sent. They suit animations, where only the latest update matters.
+     * Combine them with a write interval to limit the number of updates sent to the IKEA TRÅDFRI gateway.
+     *
+     * @param nonConfirmable True to send updates non-confirmable, false to have them acknowledged by the IKEA TRÅDFRI gateway (default)
+     * @since 1.4.0
+     */
+    public void setNonConfirmable(boolean nonConfirmable) {
+        this.nonConfirmable = nonConfirmable;
+    }
+
+    /**
+     * Get the minimum time between two updates sent to the light (in milliseconds)
+     *
+     * @return The write interval (in milliseconds)
+     * @since 1.4.0
+     */
+    public long getWriteInterval() {
+        return writeBuffer.getWriteInterval();
+    }
+
+    /**
+     * Change the minimum time between two updates sent to the light (in milliseconds)<br>
+     * Updates made within the interval are merged, the last value of every property wins.
+     * An interval of 0 sends the merged updates as soon as the previous update has completed.
+     *
+     * @param writeInterval The new write interval (in milliseconds)
+     * @since 1.4.0
+     */
+    public void setWriteInterval(long writeInterval) {
+        writeBuffer.setWriteInterval(writeInterval);
+    }
+
+    /**
+     * Apply the updates in the update queue to the light<br>
+     * The update also fails if a rate limit is set on the {@link nl.stijngroenen.tradfri.util.CommandScheduler} and its queue is full
      *
      * @return True if successfully updated the light, false if not
      * @since 1.0.0
@@ -636,4 +859,65 @@ public class Light extends Device {
         return applyUpdates();
     }
 
+    /**
+     * Apply the updates in the update queue to the light without blocking the calling thread
+     *
+     * @return A future that completes with true if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> applyUpdatesAsync() {
+        CompletableFuture<Boolean> success = applyUpdateAsync(newProperties);
+        newProperties = new LightProperties();
+        return success;
+    }
+
+    /**
+     * Apply the updates in the update queue to the light without blocking the calling thread
+     *
+     * @param transitionTime The transition time for updating the light
+     * @return A future that completes with true if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> applyUpdatesAsync(Integer transitionTime) {
+        newProperties.setTransitionTime(transitionTime);
+        return applyUpdatesAsync();
+    }
+
+    /**
+     * Apply the updates in the update queue to the light without blocking the calling thread<br>
+     * Use {@link CommandPriority#BACKGROUND} for automated updates, so they do not delay updates made by a user.
+     * When a rate limit is set on the {@link nl.stijngroenen.tradfri.util.CommandScheduler}, the update completes with false if its priority lane is full.
+     *
+     * @param priority The priority of the update
+     * @return A future that completes with true if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> applyUpdatesAsync(CommandPriority priority) {
+        CompletableFuture<Boolean> success = writeBuffer.submit(newProperties, priority);
+        newProperties = new LightProperties();
+        return success;
+    }
+
+    /**
+     * Apply the updates in the update queue to the light, even if the light already has the state they write
+     *
+     * @return True if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    public boolean forceApplyUpdates() {
+        return forceApplyUpdatesAsync().join();
+    }
+
+    /**
+     * Apply the updates in the update queue to the light without blocking the calling thread, even if the light already has the state they write
+     *
+     * @return A future that completes with true if successfully updated the light, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> forceApplyUpdatesAsync() {
+        CompletableFuture<Boolean> success = writeBuffer.submit(newProperties, CommandPriority.INTERACTIVE, true);
+        newProperties = new LightProperties();
+        return success;
+    }
+
 }
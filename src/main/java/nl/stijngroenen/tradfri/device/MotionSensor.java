@@ -25,7 +25,7 @@ import nl.stijngroenen.tradfri.util.CoapClient;
  * The class that represents an IKEA TRÅDFRI motion sensor
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
 public class MotionSensor extends Device {
 
@@ -41,6 +41,7 @@ public class MotionSensor extends Device {
      */
     public MotionSensor(String name, Long creationDate, Integer instanceId, DeviceInfo deviceInfo, CoapClient coapClient) {
         super(name, creationDate, instanceId, deviceInfo, coapClient);
+        setCoalescingWindow(0L);
     }
 
 }
@@ -19,24 +19,45 @@
 
 package nl.stijngroenen.tradfri.device;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nl.stijngroenen.tradfri.util.ApiResource;
 import nl.stijngroenen.tradfri.util.CoapClient;
+import nl.stijngroenen.tradfri.util.SerialExecutor;
+import nl.stijngroenen.tradfri.util.SupervisedObserver;
 import org.eclipse.californium.core.CoapHandler;
 import org.eclipse.californium.core.CoapObserveRelation;
 import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.observe.ObserveNotificationOrderer;
 
 /**
  * The class that observes a device to automagically detect changes
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
-public abstract class Observer implements CoapHandler {
+public abstract class Observer implements CoapHandler, SupervisedObserver {
+
+    /**
+     * The default time to wait for the state of an endpoint to settle before handling its latest notification (in milliseconds)<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final long DEFAULT_COALESCING_WINDOW = 1000L;
 
     /**
-     * The endpoint to observe
+     * The endpoint to observe, or null if the observer was constructed with a resource
      */
     private final String endpoint;
 
+    /**
+     * The resource to observe, or null if the observer was constructed with an endpoint
+     */
+    private final ApiResource resource;
+
     /**
      * A CoAP client that can be used to communicate with the IKEA TRÅDFRI gateway
      */
@@ -45,7 +66,42 @@ public abstract class Observer implements CoapHandler {
     /**
      * The observe relation used by CoAP to keep track of the connection to the IKEA TRÅDFRI gateway
      */
-    private CoapObserveRelation coapObserveRelation;
+    private volatile CoapObserveRelation coapObserveRelation;
+
+    /**
+     * The number of observe requests made, used to discard the observe relation of a request that was replaced by a newer one
+     */
+    private final AtomicInteger registrations = new AtomicInteger();
+
+    /**
+     * The executor that handles the notifications of this observer one at a time, in order of arrival
+     */
+    private final SerialExecutor executor;
+
+    /**
+     * The orderer used to discard notifications that are older than the latest accepted notification
+     */
+    private ObserveNotificationOrderer orderer;
+
+    /**
+     * The latest notification that has not been handled yet, or null
+     */
+    private final AtomicReference<CoapResponse> latestNotification;
+
+    /**
+     * The time to wait for the state of the endpoint to settle before handling its latest notification (in milliseconds)
+     */
+    private volatile long coalescingWindow = DEFAULT_COALESCING_WINDOW;
+
+    /**
+     * The time the observer last received a response, or was registered (in milliseconds since the epoch)
+     */
+    private volatile long lastActivity;
+
+    /**
+     * True if the observer is observing the endpoint, false if it was stopped
+     */
+    private volatile boolean active;
 
     /**
      * Construct the Observer class
@@ -55,22 +111,159 @@ public abstract class Observer implements CoapHandler {
      * @since 1.0.0
      */
     public Observer(String endpoint, CoapClient coapClient) {
+        this(endpoint, null, coapClient);
+    }
+
+    /**
+     * Construct the Observer class
+     *
+     * @param resource   The resource to observe
+     * @param coapClient A CoAP client that can be used to communicate with the device using the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public Observer(ApiResource resource, CoapClient coapClient) {
+        this(null, resource, coapClient);
+    }
+
+    /**
+     * Construct the Observer class
+     *
+     * @param endpoint   The endpoint to observe, or null to observe the resource
+     * @param resource   The resource to observe, or null to observe the endpoint
+     * @param coapClient A CoAP client that can be used to communicate with the device using the IKEA TRÅDFRI gateway
+     */
+    private Observer(String endpoint, ApiResource resource, CoapClient coapClient) {
         this.endpoint = endpoint;
+        this.resource = resource;
         this.coapClient = coapClient;
+        this.executor = new SerialExecutor(coapClient.getNotificationExecutor());
+        this.orderer = new ObserveNotificationOrderer();
+        this.latestNotification = new AtomicReference<>();
+    }
+
+    /**
+     * Get the time to wait for the state of the endpoint to settle before handling its latest notification (in milliseconds)
+     *
+     * @return The coalescing window (in milliseconds)
+     * @since 1.4.0
+     */
+    public long getCoalescingWindow() {
+        return this.coalescingWindow;
+    }
+
+    /**
+     * Change the time to wait for the state of the endpoint to settle before handling its latest notification (in milliseconds)<br>
+     * Notifications that arrive within the window replace each other, so the event handlers are called once for the settled state.
+     * A window of 0 handles every notification as soon as it arrives.
+     *
+     * @param coalescingWindow The new coalescing window (in milliseconds)
+     * @since 1.4.0
+     */
+    public void setCoalescingWindow(long coalescingWindow) {
+        this.coalescingWindow = Math.max(coalescingWindow, 0L);
     }
 
     /**
-     * Start observing the endpoint to automagically detect changes
+     * Start observing the endpoint to automagically detect changes<br>
+     * Observing fails if there is no secure connection to the IKEA TRÅDFRI gateway.
+     * If the secure connection is being set up again, the observe request is sent once it is set up.
      *
      * @return True if successfully started observing, false if not
      * @since 1.0.0
      */
     public boolean start() {
-        if (coapObserveRelation == null || coapObserveRelation.isCanceled()) {
-            coapObserveRelation = coapClient.requestObserve(endpoint, this);
-            return true;
+        if (active) {
+            return false;
         }
-        return false;
+        synchronized (this) {
+            orderer = new ObserveNotificationOrderer();
+        }
+        lastActivity = System.currentTimeMillis();
+        active = true;
+        coapClient.getObserveSupervisor().register(this);
+        CompletableFuture<CoapObserveRelation> relation = requestObserve();
+        if (relation.isCompletedExceptionally()) {
+            active = false;
+            coapClient.getObserveSupervisor().unregister(this);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Register the observe request again, replacing the previous observe relation<br>
+     * The first response of the new observe relation contains the current state of the endpoint, so changes missed in the meantime are handled
+     *
+     * @return True if the observe request was registered again, false if the observer was stopped
+     * @since 1.4.0
+     */
+    @Override
+    public boolean reregister() {
+        if (!active) {
+            return false;
+        }
+        CoapObserveRelation previousRelation = coapObserveRelation;
+        if (previousRelation != null && !previousRelation.isCanceled()) {
+            previousRelation.reactiveCancel();
+        }
+        synchronized (this) {
+            orderer = new ObserveNotificationOrderer();
+        }
+        lastActivity = System.currentTimeMillis();
+        requestObserve();
+        return true;
+    }
+
+    /**
+     * Make the observe request for the resource, or for the endpoint if the observer was constructed with one<br>
+     * The observe relation is kept once the request is sent, unless a newer request was made or the observer was stopped in the meantime.
+     * If the request cannot be sent, the observer stays registered with the {@link nl.stijngroenen.tradfri.util.ObserveSupervisor},
+     * which registers it again once a new secure connection is set up.
+     *
+     * @return A future that completes with the observe relation once the request is sent
+     */
+    private CompletableFuture<CoapObserveRelation> requestObserve() {
+        int generation = registrations.incrementAndGet();
+        CompletableFuture<CoapObserveRelation> relation = resource != null ? coapClient.requestObserveAsync(resource, this) : coapClient.requestObserveAsync(endpoint, this);
+        relation.thenAccept(newRelation -> setObserveRelation(generation, newRelation));
+        return relation;
+    }
+
+    /**
+     * Keep the observe relation of an observe request, or cancel it if a newer request was made or the observer was stopped
+     *
+     * @param generation The number of the observe request
+     * @param relation   The observe relation of the observe request
+     */
+    private synchronized void setObserveRelation(int generation, CoapObserveRelation relation) {
+        if (!active) {
+            relation.proactiveCancel();
+        } else if (generation != registrations.get()) {
+            relation.reactiveCancel();
+        } else {
+            coapObserveRelation = relation;
+        }
+    }
+
+    /**
+     * Check if the observer is observing the endpoint
+     *
+     * @return True if the observer was started and not stopped, false if not
+     * @since 1.4.0
+     */
+    public boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * Get the time the observer last received a response, or was registered
+     *
+     * @return The time of the last activity (in milliseconds since the epoch)
+     * @since 1.4.0
+     */
+    @Override
+    public long getLastActivity() {
+        return this.lastActivity;
     }
 
     /**
@@ -79,9 +272,16 @@ public abstract class Observer implements CoapHandler {
      * @return True if successfully stopped observing, false if not
      * @since 1.0.0
      */
+    @Override
     public boolean stop() {
-        if (coapObserveRelation != null && !coapObserveRelation.isCanceled()) {
-            coapObserveRelation.proactiveCancel();
+        CoapObserveRelation relation;
+        synchronized (this) {
+            active = false;
+            relation = coapObserveRelation;
+        }
+        coapClient.getObserveSupervisor().unregister(this);
+        if (relation != null && !relation.isCanceled()) {
+            relation.proactiveCancel();
             return true;
         }
         return false;
@@ -100,40 +300,77 @@ public abstract class Observer implements CoapHandler {
     }
 
     /**
-     * Handles a new response from the CoAP client
+     * Handles a new response from the CoAP client<br>
+     * Notifications that are older than the latest accepted notification are discarded.
+     * The others are kept until the coalescing window has passed, after which only the latest one is handled on the shared notification executor.
      *
      * @param coapResponse The response to the CoAP request
      * @since 1.0.0
      */
     @Override
     public void onLoad(CoapResponse coapResponse) {
+        lastActivity = System.currentTimeMillis();
         if (!coapResponse.isSuccess()) {
             return;
         }
-        new Thread(() -> {
-            try {
-                Thread.sleep(1000);
-                callEventHandlers(coapResponse.getResponseText());
-            } catch (InterruptedException ignored) {
+        synchronized (this) {
+            if (coapResponse.getOptions().hasObserve() && !orderer.isNew(coapResponse.advanced())) {
+                return;
+            }
+            if (latestNotification.getAndSet(coapResponse) != null) {
+                return;
             }
-        }).start();
+        }
+        long window = coalescingWindow;
+        if (window == 0) {
+            executor.execute(this::handleLatestNotification);
+        } else {
+            coapClient.getScheduler().schedule(() -> executor.execute(this::handleLatestNotification), window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Call the event handlers for the latest notification that has not been handled yet
+     *
+     * @since 1.4.0
+     */
+    private void handleLatestNotification() {
+        CoapResponse coapResponse = latestNotification.getAndSet(null);
+        if (coapResponse != null) {
+            callEventHandlers(coapResponse.getPayload());
+        }
     }
 
     /**
-     * Handles an error from the CoAP client
+     * Handles an error from the CoAP client<br>
+     * The observe relation is lost, so the observer is registered again by the {@link nl.stijngroenen.tradfri.util.ObserveSupervisor}
      *
      * @since 1.0.0
      */
     @Override
     public void onError() {
+        if (active) {
+            coapClient.getObserveSupervisor().onObserveError(this);
+        }
     }
 
     /**
      * Call the appropriate event handlers
      *
-     * @param payload The payload text of the CoAP response
+     * @param payload The payload of the CoAP response
      * @since 1.0.0
      */
     public abstract void callEventHandlers(String payload);
 
+    /**
+     * Call the appropriate event handlers with the raw payload of a notification<br>
+     * By default the payload is decoded as UTF-8 and passed to {@link #callEventHandlers(String)}; observers that parse the bytes directly override this method.
+     *
+     * @param payload The payload of the CoAP response
+     * @since 1.4.0
+     */
+    public void callEventHandlers(byte[] payload) {
+        callEventHandlers(new String(payload, StandardCharsets.UTF_8));
+    }
+
 }
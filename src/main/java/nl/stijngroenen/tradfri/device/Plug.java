@@ -19,22 +19,34 @@
 
 package nl.stijngroenen.tradfri.device;
 
+import java.util.concurrent.CompletableFuture;
+
 import nl.stijngroenen.tradfri.payload.DeviceRequest;
-import nl.stijngroenen.tradfri.util.ApiEndpoint;
 import nl.stijngroenen.tradfri.util.CoapClient;
+import nl.stijngroenen.tradfri.util.CommandPriority;
 
 /**
  * The class that represents an IKEA TRÅDFRI plug
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
 public class Plug extends Device {
 
     /**
-     * The current properties of the plug
+     * The current properties of the plug, including the acknowledged updates the IKEA TRÅDFRI gateway has not reported yet
+     */
+    private volatile PlugProperties properties;
+
+    /**
+     * The properties of the plug as last reported by the IKEA TRÅDFRI gateway
+     */
+    private PlugProperties reportedProperties;
+
+    /**
+     * The acknowledged updates of the plug the IKEA TRÅDFRI gateway has not reported yet, or null
      */
-    private PlugProperties properties;
+    private PlugProperties pendingProperties;
 
     /**
      * The new properties of the plug in the update queue
@@ -55,6 +67,7 @@ public class Plug extends Device {
     public Plug(String name, Long creationDate, Integer instanceId, DeviceInfo deviceInfo, PlugProperties properties, CoapClient coapClient) {
         super(name, creationDate, instanceId, deviceInfo, coapClient);
         this.properties = properties;
+        this.reportedProperties = properties;
         this.newProperties = new PlugProperties();
     }
 
@@ -70,7 +83,8 @@ public class Plug extends Device {
     }
 
     /**
-     * Set the properties of the plug
+     * Set the properties of the plug, as reported by the IKEA TRÅDFRI gateway<br>
+     * Acknowledged updates that were not reported yet are replaced by the reported properties
      *
      * @param properties The properties of the plug
      * @since 1.0.0
@@ -78,7 +92,7 @@ public class Plug extends Device {
     @Override
     public void setProperties(DeviceProperties properties) {
         if (properties instanceof PlugProperties) {
-            this.properties = (PlugProperties) properties;
+            reconcile((PlugProperties) properties);
         }
     }
 
@@ -115,6 +129,19 @@ public class Plug extends Device {
         return applyUpdate(newProperties);
     }
 
+    /**
+     * Set the on / off state of the plug without blocking the calling thread
+     *
+     * @param on The new on / off state for the plug (true for on, false for off)
+     * @return A future that completes with true if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> setOnAsync(Boolean on) {
+        PlugProperties newProperties = new PlugProperties();
+        newProperties.setOn(on);
+        return applyUpdateAsync(newProperties);
+    }
+
     /**
      * Apply updates to the plug
      *
@@ -123,14 +150,150 @@ public class Plug extends Device {
      * @since 1.0.0
      */
     private boolean applyUpdate(PlugProperties newProperties) {
+        return applyUpdateAsync(newProperties).join();
+    }
+
+    /**
+     * Apply updates to the plug without blocking the calling thread
+     *
+     * @param newProperties The new properties to apply to the plug
+     * @return A future that completes with true if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    private CompletableFuture<Boolean> applyUpdateAsync(PlugProperties newProperties) {
+        return applyUpdateAsync(newProperties, false);
+    }
+
+    /**
+     * Apply updates to the plug without blocking the calling thread<br>
+     * An update that does not change the confirmed state of the plug is suppressed if the {@link nl.stijngroenen.tradfri.util.RedundantWriteFilter} is enabled, unless it is forced
+     *
+     * @param newProperties The new properties to apply to the plug
+     * @param force         True to write the update even if it is redundant, false if not
+     * @return A future that completes with true if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    private CompletableFuture<Boolean> applyUpdateAsync(PlugProperties newProperties, boolean force) {
+        return applyUpdateAsync(newProperties, CommandPriority.INTERACTIVE, force);
+    }
+
+    /**
+     * Apply an update to the plug, as part of an update of several devices at once<br>
+     * The update passes the {@link nl.stijngroenen.tradfri.util.RedundantWriteFilter} like any other update
+     *
+     * @param update   The new properties to apply to the plug, which are copied
+     * @param priority The priority of the update
+     * @return A future that completes with true if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    CompletableFuture<Boolean> submitUpdate(PlugProperties update, CommandPriority priority) {
+        return applyUpdateAsync(PropertiesMerge.copy(update), priority, false);
+    }
+
+    /**
+     * Apply updates to the plug without blocking the calling thread<br>
+     * An update that does not change the confirmed state of the plug is suppressed if the {@link nl.stijngroenen.tradfri.util.RedundantWriteFilter} is enabled, unless it is forced
+     *
+     * @param newProperties The new properties to apply to the plug
+     * @param priority      The priority of the update
+     * @param force         True to write the update even if it is redundant, false if not
+     * @return A future that completes with true if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    private CompletableFuture<Boolean> applyUpdateAsync(PlugProperties newProperties, CommandPriority priority, boolean force) {
+        if (!force && coapClient.getRedundantWriteFilter().suppress(isRedundant(newProperties))) {
+            return CompletableFuture.completedFuture(true);
+        }
         DeviceRequest request = new DeviceRequest();
         request.setPlugProperties(new PlugProperties[]{newProperties});
-        String response = coapClient.put(ApiEndpoint.getUri(ApiEndpoint.DEVICES, String.valueOf(getInstanceId())), request, String.class);
-        return response != null;
+        return coapClient.putAsync(getResource(), request, String.class, priority).handle((response, error) -> {
+            boolean success = error == null && response != null;
+            if (success) {
+                confirm(newProperties);
+            }
+            return success;
+        });
     }
 
     /**
-     * Apply the updates in the update queue to the plug
+     * Check if an update does not change the state of the plug the IKEA TRÅDFRI gateway reported or acknowledged
+     *
+     * @param newProperties The new properties to write to the plug
+     * @return True if the update is redundant, false if not, or if the state of the plug is not known to be current
+     * @since 1.4.0
+     */
+    private synchronized boolean isRedundant(PlugProperties newProperties) {
+        return isStateCurrent() && PropertiesMerge.isRedundant(properties, newProperties);
+    }
+
+    /**
+     * Apply an update the IKEA TRÅDFRI gateway acknowledged to the properties of the plug right away<br>
+     * The update is pending until the gateway reports the properties of the plug, unless the gateway already reported them
+     *
+     * @param newProperties The properties that were written to the plug
+     * @since 1.4.0
+     */
+    synchronized void confirm(PlugProperties newProperties) {
+        if (properties == null || (pendingProperties == null && PropertiesMerge.isRedundant(reportedProperties, newProperties))) {
+            return;
+        }
+        PlugProperties optimisticProperties = PropertiesMerge.copy(properties);
+        PropertiesMerge.overlay(optimisticProperties, newProperties);
+        if (pendingProperties == null) {
+            pendingProperties = new PlugProperties();
+        }
+        PropertiesMerge.overlay(pendingProperties, newProperties);
+        properties = optimisticProperties;
+    }
+
+    /**
+     * Replace the properties of the plug with the properties reported by the IKEA TRÅDFRI gateway
+     *
+     * @param reported The properties reported by the IKEA TRÅDFRI gateway
+     * @return The properties the plug was expected to have if the gateway reported different values for pending updates, or null if it agreed
+     * @since 1.4.0
+     */
+    synchronized PlugProperties reconcile(PlugProperties reported) {
+        PlugProperties expected = pendingProperties != null && !PropertiesMerge.isRedundant(reported, pendingProperties) ? properties : null;
+        reportedProperties = reported;
+        pendingProperties = null;
+        properties = reported;
+        return expected;
+    }
+
+    /**
+     * Get the properties of the plug as last reported by the IKEA TRÅDFRI gateway, without the pending updates
+     *
+     * @return The reported properties of the plug
+     * @since 1.4.0
+     */
+    synchronized PlugProperties getReportedProperties() {
+        return this.reportedProperties;
+    }
+
+    /**
+     * Check if updates were acknowledged by the IKEA TRÅDFRI gateway that it has not reported yet
+     *
+     * @return True if the properties of the plug contain pending updates, false if they are as reported
+     * @since 1.4.0
+     */
+    public synchronized boolean hasPendingUpdates() {
+        return pendingProperties != null;
+    }
+
+    /**
+     * Get the updates that were acknowledged by the IKEA TRÅDFRI gateway, but that it has not reported yet
+     *
+     * @return A copy of the pending updates, or null if there are none
+     * @since 1.4.0
+     */
+    public synchronized PlugProperties getPendingUpdates() {
+        return PropertiesMerge.copy(pendingProperties);
+    }
+
+    /**
+     * Apply the updates in the update queue to the plug<br>
+     * The update also fails if a rate limit is set on the {@link nl.stijngroenen.tradfri.util.CommandScheduler} and its queue is full
      *
      * @return True if successfully updated the plug, false if not
      * @since 1.0.0
@@ -141,4 +304,38 @@ public class Plug extends Device {
         return success;
     }
 
+    /**
+     * Apply the updates in the update queue to the plug without blocking the calling thread
+     *
+     * @return A future that completes with true if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> applyUpdatesAsync() {
+        CompletableFuture<Boolean> success = applyUpdateAsync(newProperties);
+        newProperties = new PlugProperties();
+        return success;
+    }
+
+    /**
+     * Apply the updates in the update queue to the plug, even if the plug already has the state they write
+     *
+     * @return True if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    public boolean forceApplyUpdates() {
+        return forceApplyUpdatesAsync().join();
+    }
+
+    /**
+     * Apply the updates in the update queue to the plug without blocking the calling thread, even if the plug already has the state they write
+     *
+     * @return A future that completes with true if successfully updated the plug, false if not
+     * @since 1.4.0
+     */
+    public CompletableFuture<Boolean> forceApplyUpdatesAsync() {
+        CompletableFuture<Boolean> success = applyUpdateAsync(newProperties, true);
+        newProperties = new PlugProperties();
+        return success;
+    }
+
 }
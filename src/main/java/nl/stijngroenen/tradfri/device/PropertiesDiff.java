@@ -0,0 +1,201 @@
+package nl.stijngroenen.tradfri.device;
+
+import java.util.Objects;
+
+/**
+ * The class that compares the properties of IKEA TRÅDFRI lights, plugs and groups<br>
+ * A comparison returns a bitmask of the properties that differ, which can be tested against the constants of this class
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public final class PropertiesDiff {
+
+    /**
+     * The bit for the on / off state<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int ON = 1;
+
+    /**
+     * The bit for the brightness<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int BRIGHTNESS = 1 << 1;
+
+    /**
+     * The bit for the colour in hexadecimals<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int COLOUR_HEX = 1 << 2;
+
+    /**
+     * The bit for the hue<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int HUE = 1 << 3;
+
+    /**
+     * The bit for the saturation<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int SATURATION = 1 << 4;
+
+    /**
+     * The bit for the X value of the colour<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int COLOUR_X = 1 << 5;
+
+    /**
+     * The bit for the Y value of the colour<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int COLOUR_Y = 1 << 6;
+
+    /**
+     * The bit for the colour temperature<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int COLOUR_TEMPERATURE = 1 << 7;
+
+    /**
+     * The bits for the XY values of the colour<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int COLOUR_XY = COLOUR_X | COLOUR_Y;
+
+    /**
+     * The bits for the colour (XY values, hue and saturation)<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int COLOUR = COLOUR_XY | HUE | SATURATION;
+
+    /**
+     * The bits for every property of a light<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int ALL_LIGHT = ON | BRIGHTNESS | COLOUR_HEX | COLOUR | COLOUR_TEMPERATURE;
+
+    /**
+     * The bits for every property of a plug<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int ALL_PLUG = ON;
+
+    /**
+     * The bits for every property of a group<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int ALL_GROUP = ON | BRIGHTNESS | COLOUR_HEX;
+
+    /**
+     * Construct the PropertiesDiff class
+     *
+     * @since 1.4.0
+     */
+    private PropertiesDiff() {
+    }
+
+    /**
+     * Compare the properties of a light
+     *
+     * @param oldProperties The old properties of the light
+     * @param newProperties The new properties of the light
+     * @return A bitmask of the properties that differ
+     * @since 1.4.0
+     */
+    public static int diff(LightProperties oldProperties, LightProperties newProperties) {
+        if (oldProperties == newProperties) {
+            return 0;
+        }
+        if (oldProperties == null || newProperties == null) {
+            return ALL_LIGHT;
+        }
+        int changes = 0;
+        if (!Objects.equals(oldProperties.getOn(), newProperties.getOn())) {
+            changes |= ON;
+        }
+        if (!Objects.equals(oldProperties.getBrightness(), newProperties.getBrightness())) {
+            changes |= BRIGHTNESS;
+        }
+        if (!Objects.equals(oldProperties.getColourHex(), newProperties.getColourHex())) {
+            changes |= COLOUR_HEX;
+        }
+        if (!Objects.equals(oldProperties.getHue(), newProperties.getHue())) {
+            changes |= HUE;
+        }
+        if (!Objects.equals(oldProperties.getSaturation(), newProperties.getSaturation())) {
+            changes |= SATURATION;
+        }
+        if (!Objects.equals(oldProperties.getColourX(), newProperties.getColourX())) {
+            changes |= COLOUR_X;
+        }
+        if (!Objects.equals(oldProperties.getColourY(), newProperties.getColourY())) {
+            changes |= COLOUR_Y;
+        }
+        if (!Objects.equals(oldProperties.getColourTemperature(), newProperties.getColourTemperature())) {
+            changes |= COLOUR_TEMPERATURE;
+        }
+        return changes;
+    }
+
+    /**
+     * Compare the properties of a plug
+     *
+     * @param oldProperties The old properties of the plug
+     * @param newProperties The new properties of the plug
+     * @return A bitmask of the properties that differ
+     * @since 1.4.0
+     */
+    public static int diff(PlugProperties oldProperties, PlugProperties newProperties) {
+        if (oldProperties == newProperties) {
+            return 0;
+        }
+        if (oldProperties == null || newProperties == null) {
+            return ALL_PLUG;
+        }
+        return Objects.equals(oldProperties.getOn(), newProperties.getOn()) ? 0 : ON;
+    }
+
+    /**
+     * Compare the properties of a group
+     *
+     * @param oldProperties The old properties of the group
+     * @param newProperties The new properties of the group
+     * @return A bitmask of the properties that differ
+     * @since 1.4.0
+     */
+    public static int diff(GroupProperties oldProperties, GroupProperties newProperties) {
+        if (oldProperties == newProperties) {
+            return 0;
+        }
+        if (oldProperties == null || newProperties == null) {
+            return ALL_GROUP;
+        }
+        int changes = 0;
+        if (!Objects.equals(oldProperties.getOn(), newProperties.getOn())) {
+            changes |= ON;
+        }
+        if (!Objects.equals(oldProperties.getBrightness(), newProperties.getBrightness())) {
+            changes |= BRIGHTNESS;
+        }
+        if (!Objects.equals(oldProperties.getColourHex(), newProperties.getColourHex())) {
+            changes |= COLOUR_HEX;
+        }
+        return changes;
+    }
+
+    /**
+     * Check if any of the given properties is part of a bitmask of changes
+     *
+     * @param changes    A bitmask of the properties that differ
+     * @param properties The bits of the properties to check
+     * @return True if at least one of the properties differs, false if not
+     * @since 1.4.0
+     */
+    public static boolean hasChanged(int changes, int properties) {
+        return (changes & properties) != 0;
+    }
+
+}
@@ -0,0 +1,287 @@
+package nl.stijngroenen.tradfri.device;
+
+import java.util.Objects;
+
+/**
+ * The class that merges pending updates to the properties of IKEA TRÅDFRI lights and groups<br>
+ * The last value of every property wins, and a new colour replaces the colour of the other colour modes
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+final class PropertiesMerge {
+
+    /**
+     * Construct the PropertiesMerge class
+     *
+     * @since 1.4.0
+     */
+    private PropertiesMerge() {
+    }
+
+    /**
+     * Merge an update into the pending updates of a light
+     *
+     * @param pending The pending updates of the light, which are changed in place
+     * @param update  The update to merge into the pending updates
+     * @since 1.4.0
+     */
+    static void merge(LightProperties pending, LightProperties update) {
+        if (update.getOn() != null) {
+            pending.setOn(update.getOn());
+        }
+        if (update.getBrightness() != null) {
+            pending.setBrightness(update.getBrightness());
+        }
+        if (update.getColourHex() != null) {
+            pending.setColourHex(update.getColourHex());
+            pending.setHue(null);
+            pending.setSaturation(null);
+            pending.setColourX(null);
+            pending.setColourY(null);
+            pending.setColourTemperature(null);
+        }
+        if (update.getHue() != null || update.getSaturation() != null) {
+            if (update.getHue() != null) {
+                pending.setHue(update.getHue());
+            }
+            if (update.getSaturation() != null) {
+                pending.setSaturation(update.getSaturation());
+            }
+            pending.setColourX(null);
+            pending.setColourY(null);
+            pending.setColourHex(null);
+            pending.setColourTemperature(null);
+        }
+        if (update.getColourX() != null || update.getColourY() != null) {
+            pending.setColourX(update.getColourX());
+            pending.setColourY(update.getColourY());
+            pending.setColourHex(null);
+            pending.setHue(null);
+            pending.setSaturation(null);
+            pending.setColourTemperature(null);
+        }
+        if (update.getColourTemperature() != null) {
+            pending.setColourTemperature(update.getColourTemperature());
+            pending.setColourHex(null);
+            pending.setHue(null);
+            pending.setSaturation(null);
+            pending.setColourX(null);
+            pending.setColourY(null);
+        }
+        if (update.getTransitionTime() != null) {
+            pending.setTransitionTime(update.getTransitionTime());
+        }
+    }
+
+    /**
+     * Merge an update into the pending updates of a group
+     *
+     * @param pending The pending updates of the group, which are changed in place
+     * @param update  The update to merge into the pending updates
+     * @since 1.4.0
+     */
+    static void merge(GroupProperties pending, GroupProperties update) {
+        if (update.getOn() != null) {
+            pending.setOn(update.getOn());
+        }
+        if (update.getBrightness() != null) {
+            pending.setBrightness(update.getBrightness());
+        }
+        if (update.getColourHex() != null) {
+            pending.setColourHex(update.getColourHex());
+        }
+        if (update.getTransitionTime() != null) {
+            pending.setTransitionTime(update.getTransitionTime());
+        }
+    }
+
+    /**
+     * Check if two updates of a light write the same properties
+     *
+     * @param first  The first update
+     * @param second The second update
+     * @return True if both updates write the same properties, false if not
+     * @since 1.4.0
+     */
+    static boolean isSameWrite(LightProperties first, LightProperties second) {
+        return PropertiesDiff.diff(first, second) == 0 && Objects.equals(first.getTransitionTime(), second.getTransitionTime());
+    }
+
+    /**
+     * Check if two updates of a group write the same properties
+     *
+     * @param first  The first update
+     * @param second The second update
+     * @return True if both updates write the same properties, false if not
+     * @since 1.4.0
+     */
+    static boolean isSameWrite(GroupProperties first, GroupProperties second) {
+        return PropertiesDiff.diff(first, second) == 0 && Objects.equals(first.getTransitionTime(), second.getTransitionTime());
+    }
+
+    /**
+     * Apply an update to the state of a light, only changing the properties the update writes<br>
+     * Unlike {@link #merge(LightProperties, LightProperties)}, the colour of the other colour modes is kept, as the light still has it
+     *
+     * @param state  The state of the light, which is changed in place
+     * @param update The update to apply
+     * @since 1.4.0
+     */
+    static void overlay(LightProperties state, LightProperties update) {
+        if (update.getOn() != null) {
+            state.setOn(update.getOn());
+        }
+        if (update.getBrightness() != null) {
+            state.setBrightness(update.getBrightness());
+        }
+        if (update.getColourHex() != null) {
+            state.setColourHex(update.getColourHex());
+        }
+        if (update.getHue() != null) {
+            state.setHue(update.getHue());
+        }
+        if (update.getSaturation() != null) {
+            state.setSaturation(update.getSaturation());
+        }
+        if (update.getColourX() != null) {
+            state.setColourX(update.getColourX());
+        }
+        if (update.getColourY() != null) {
+            state.setColourY(update.getColourY());
+        }
+        if (update.getColourTemperature() != null) {
+            state.setColourTemperature(update.getColourTemperature());
+        }
+    }
+
+    /**
+     * Apply an update to the state of a plug, only changing the properties the update writes
+     *
+     * @param state  The state of the plug, which is changed in place
+     * @param update The update to apply
+     * @since 1.4.0
+     */
+    static void overlay(PlugProperties state, PlugProperties update) {
+        if (update.getOn() != null) {
+            state.setOn(update.getOn());
+        }
+    }
+
+    /**
+     * Copy the state of a light
+     *
+     * @param properties The state to copy, or null
+     * @return A copy of the state, or null
+     * @since 1.4.0
+     */
+    static LightProperties copy(LightProperties properties) {
+        if (properties == null) {
+            return null;
+        }
+        LightProperties copy = new LightProperties();
+        copy.setInstanceId(properties.getInstanceId());
+        copy.setOn(properties.getOn());
+        copy.setBrightness(properties.getBrightness());
+        copy.setColourHex(properties.getColourHex());
+        copy.setHue(properties.getHue());
+        copy.setSaturation(properties.getSaturation());
+        copy.setColourX(properties.getColourX());
+        copy.setColourY(properties.getColourY());
+        copy.setColourTemperature(properties.getColourTemperature());
+        return copy;
+    }
+
+    /**
+     * Copy the state of a plug
+     *
+     * @param properties The state to copy, or null
+     * @return A copy of the state, or null
+     * @since 1.4.0
+     */
+    static PlugProperties copy(PlugProperties properties) {
+        if (properties == null) {
+            return null;
+        }
+        PlugProperties copy = new PlugProperties();
+        copy.setInstanceId(properties.getInstanceId());
+        copy.setOn(properties.getOn());
+        return copy;
+    }
+
+    /**
+     * Copy the state of a group
+     *
+     * @param properties The state to copy, or null
+     * @return A copy of the state, or null
+     * @since 1.4.0
+     */
+    static GroupProperties copy(GroupProperties properties) {
+        if (properties == null) {
+            return null;
+        }
+        return new GroupProperties(properties.getOn(), properties.getBrightness(), null, properties.getColourHex());
+    }
+
+    /**
+     * Check if an update of a light only writes the values the light already has<br>
+     * The transition time is not part of the state, so it is ignored
+     *
+     * @param confirmed The state of the light the gateway confirmed, or null if it is unknown
+     * @param update    The update to check
+     * @return True if the update does not change the state of the light, false if it does or the state is unknown
+     * @since 1.4.0
+     */
+    static boolean isRedundant(LightProperties confirmed, LightProperties update) {
+        return confirmed != null
+            && matches(confirmed.getOn(), update.getOn())
+            && matches(confirmed.getBrightness(), update.getBrightness())
+            && matches(confirmed.getColourHex(), update.getColourHex())
+            && matches(confirmed.getHue(), update.getHue())
+            && matches(confirmed.getSaturation(), update.getSaturation())
+            && matches(confirmed.getColourX(), update.getColourX())
+            && matches(confirmed.getColourY(), update.getColourY())
+            && matches(confirmed.getColourTemperature(), update.getColourTemperature());
+    }
+
+    /**
+     * Check if an update of a plug only writes the values the plug already has
+     *
+     * @param confirmed The state of the plug the gateway confirmed, or null if it is unknown
+     * @param update    The update to check
+     * @return True if the update does not change the state of the plug, false if it does or the state is unknown
+     * @since 1.4.0
+     */
+    static boolean isRedundant(PlugProperties confirmed, PlugProperties update) {
+        return confirmed != null && matches(confirmed.getOn(), update.getOn());
+    }
+
+    /**
+     * Check if an update of a group only writes the values the group already has<br>
+     * The transition time is not part of the state, so it is ignored
+     *
+     * @param confirmed The state of the group the gateway confirmed, or null if it is unknown
+     * @param update    The update to check
+     * @return True if the update does not change the state of the group, false if it does or the state is unknown
+     * @since 1.4.0
+     */
+    static boolean isRedundant(GroupProperties confirmed, GroupProperties update) {
+        return confirmed != null
+            && matches(confirmed.getOn(), update.getOn())
+            && matches(confirmed.getBrightness(), update.getBrightness())
+            && matches(confirmed.getColourHex(), update.getColourHex());
+    }
+
+    /**
+     * Check if a property of an update matches the confirmed value
+     *
+     * @param confirmed The confirmed value of the property
+     * @param update    The value of the property in the update, or null if the update does not write it
+     * @return True if the update does not write the property or writes the confirmed value, false if not
+     * @since 1.4.0
+     */
+    private static boolean matches(Object confirmed, Object update) {
+        return update == null || update.equals(confirmed);
+    }
+
+}
@@ -25,7 +25,7 @@ import nl.stijngroenen.tradfri.util.CoapClient;
  * The class that represents an IKEA TRÅDFRI remote
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
 public class Remote extends Device {
 
@@ -41,6 +41,7 @@ public class Remote extends Device {
      */
     public Remote(String name, Long creationDate, Integer instanceId, DeviceInfo deviceInfo, CoapClient coapClient) {
         super(name, creationDate, instanceId, deviceInfo, coapClient);
+        setCoalescingWindow(0L);
     }
 
 }
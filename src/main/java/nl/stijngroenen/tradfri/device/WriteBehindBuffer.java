@@ -0,0 +1,256 @@
+package nl.stijngroenen.tradfri.device;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+import nl.stijngroenen.tradfri.util.CommandPriority;
+
+/**
+ * The class that buffers updates to the properties of an IKEA TRÅDFRI light or group before they are written to the gateway<br>
+ * At most one update is in flight at a time, and updates that arrive in the meantime are merged into a single pending update.
+ * The pending update is written once the previous update has completed and the write interval has passed since it was sent.
+ *
+ * @param <P> The type of properties that is written
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+class WriteBehindBuffer<P> {
+
+    /**
+     * The scheduler used to delay writes until the write interval has passed
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The function that writes an update to the gateway
+     */
+    private final Writer<P> writer;
+
+    /**
+     * The function that merges an update into the pending update
+     */
+    private final BiConsumer<P, P> merger;
+
+    /**
+     * The function that checks if two updates write the same properties
+     */
+    private final BiPredicate<P, P> sameWrite;
+
+    /**
+     * The minimum time between two writes to the gateway (in milliseconds)
+     */
+    private long writeInterval;
+
+    /**
+     * The update that has not been written yet, or null
+     */
+    private P pending;
+
+    /**
+     * The future shared by the callers whose updates were merged into the pending update
+     */
+    private CompletableFuture<Boolean> pendingFuture;
+
+    /**
+     * The highest priority of the updates that were merged into the pending update
+     */
+    private CommandPriority pendingPriority;
+
+    /**
+     * True if one of the updates that were merged into the pending update has to be written even if it is redundant
+     */
+    private boolean pendingForce;
+
+    /**
+     * The update that is being written, or null
+     */
+    private P inFlight;
+
+    /**
+     * The future shared by the callers whose updates are being written
+     */
+    private CompletableFuture<Boolean> inFlightFuture;
+
+    /**
+     * True if a delayed write of the pending update is scheduled, false if not
+     */
+    private boolean writeScheduled;
+
+    /**
+     * The time the last write was sent (in milliseconds)
+     */
+    private long lastWrite;
+
+    /**
+     * Construct the WriteBehindBuffer class
+     *
+     * @param scheduler The scheduler used to delay writes until the write interval has passed
+     * @param writer    The function that writes an update to the gateway
+     * @param merger    The function that merges an update into the pending update
+     * @param sameWrite The function that checks if two updates write the same properties
+     * @since 1.4.0
+     */
+    WriteBehindBuffer(ScheduledExecutorService scheduler, Writer<P> writer, BiConsumer<P, P> merger, BiPredicate<P, P> sameWrite) {
+        this.scheduler = scheduler;
+        this.writer = writer;
+        this.merger = merger;
+        this.sameWrite = sameWrite;
+    }
+
+    /**
+     * Get the minimum time between two writes to the gateway (in milliseconds)
+     *
+     * @return The write interval (in milliseconds)
+     * @since 1.4.0
+     */
+    synchronized long getWriteInterval() {
+        return this.writeInterval;
+    }
+
+    /**
+     * Change the minimum time between two writes to the gateway (in milliseconds)
+     *
+     * @param writeInterval The new write interval (in milliseconds)
+     * @since 1.4.0
+     */
+    synchronized void setWriteInterval(long writeInterval) {
+        this.writeInterval = Math.max(writeInterval, 0L);
+    }
+
+    /**
+     * Submit an update to be written to the gateway<br>
+     * An update that writes the same properties as the update in flight shares its result instead of being written again.
+     * The merged update is written with the highest priority of the updates it contains.
+     *
+     * @param update   The update to write, which is owned by the buffer from now on
+     * @param priority The priority of the update
+     * @return A future that completes with true if the update was successfully written, false if not
+     * @since 1.4.0
+     */
+    CompletableFuture<Boolean> submit(P update, CommandPriority priority) {
+        return submit(update, priority, false);
+    }
+
+    /**
+     * Submit an update to be written to the gateway<br>
+     * A forced update is written even if the gateway already has the state it writes, and makes the merged update it is part of forced as well.
+     *
+     * @param update   The update to write, which is owned by the buffer from now on
+     * @param priority The priority of the update
+     * @param force    True to write the update even if it is redundant, false if not
+     * @return A future that completes with true if the update was successfully written, false if not
+     * @since 1.4.0
+     */
+    CompletableFuture<Boolean> submit(P update, CommandPriority priority, boolean force) {
+        CompletableFuture<Boolean> future;
+        synchronized (this) {
+            if (pending == null && inFlight != null && sameWrite.test(inFlight, update)) {
+                return inFlightFuture;
+            }
+            if (pending == null) {
+                pending = update;
+                pendingFuture = new CompletableFuture<>();
+                pendingPriority = priority;
+                pendingForce = force;
+            } else {
+                pendingForce |= force;
+                merger.accept(pending, update);
+                if (priority.compareTo(pendingPriority) < 0) {
+                    pendingPriority = priority;
+                }
+            }
+            future = pendingFuture;
+        }
+        writeIfReady();
+        return future;
+    }
+
+    /**
+     * Write the pending update if no update is in flight and the write interval has passed, or schedule it for when the interval has passed<br>
+     * The update is taken out under the lock of the buffer, but written outside of it, so a slow writer does not block callers submitting updates.
+     *
+     * @since 1.4.0
+     */
+    private void writeIfReady() {
+        P update;
+        CompletableFuture<Boolean> future;
+        CommandPriority priority;
+        boolean force;
+        synchronized (this) {
+            if (pending == null || inFlight != null || writeScheduled) {
+                return;
+            }
+            long delay = lastWrite + writeInterval - System.currentTimeMillis();
+            if (delay > 0) {
+                writeScheduled = true;
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        writeScheduled = false;
+                    }
+                    writeIfReady();
+                }, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            update = pending;
+            future = pendingFuture;
+            priority = pendingPriority;
+            force = pendingForce;
+            pending = null;
+            pendingFuture = null;
+            pendingPriority = null;
+            pendingForce = false;
+            inFlight = update;
+            inFlightFuture = future;
+            lastWrite = System.currentTimeMillis();
+        }
+        CompletableFuture<Boolean> written;
+        try {
+            written = writer.write(update, priority, force);
+        } catch (RuntimeException e) {
+            finishWrite();
+            future.completeExceptionally(e);
+            return;
+        }
+        written.whenComplete((success, error) -> {
+            finishWrite();
+            future.complete(error == null && Boolean.TRUE.equals(success));
+        });
+    }
+
+    /**
+     * Clear the update in flight after it was written, and write the pending update if it is ready
+     *
+     * @since 1.4.0
+     */
+    private void finishWrite() {
+        synchronized (this) {
+            inFlight = null;
+            inFlightFuture = null;
+        }
+        writeIfReady();
+    }
+
+    /**
+     * The interface of the function that writes an update to the gateway
+     *
+     * @param <P> The type of properties that is written
+     */
+    interface Writer<P> {
+
+        /**
+         * Write an update to the gateway
+         *
+         * @param update   The update to write
+         * @param priority The priority of the update
+         * @param force    True to write the update even if it is redundant, false if not
+         * @return A future that completes with true if the update was successfully written, or was not needed, false if not
+         * @since 1.4.0
+         */
+        CompletableFuture<Boolean> write(P update, CommandPriority priority, boolean force);
+
+    }
+
+}
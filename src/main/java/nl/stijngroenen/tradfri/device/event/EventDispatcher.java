@@ -0,0 +1,245 @@
+package nl.stijngroenen.tradfri.device.event;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The class that keeps the event handlers of a device or gateway and dispatches events to them<br>
+ * The event type of every handler is resolved once at registration, and for every concrete event class the interested handlers are looked up once and then cached
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class EventDispatcher {
+
+    /**
+     * The registered event handlers together with the dispatch table built for them
+     */
+    private volatile DispatchTable table;
+
+    /**
+     * The modifiable view of the registered event handlers
+     */
+    private final List<EventHandler> handlerView = new HandlerList();
+
+    /**
+     * Construct the EventDispatcher class
+     *
+     * @since 1.4.0
+     */
+    public EventDispatcher() {
+        this.table = new DispatchTable(Collections.emptyList());
+    }
+
+    /**
+     * Get the registered event handlers<br>
+     * Changes to the returned list register or unregister event handlers, just like {@link #addEventHandler(EventHandler)} and {@link #removeEventHandler(EventHandler)}.
+     *
+     * @return A modifiable view of the registered event handlers (in order of registration)
+     * @since 1.4.0
+     */
+    public List<EventHandler> getEventHandlers() {
+        return handlerView;
+    }
+
+    /**
+     * Register an event handler
+     *
+     * @param eventHandler The event handler to register
+     * @since 1.4.0
+     */
+    public synchronized void addEventHandler(EventHandler eventHandler) {
+        List<EventHandler> handlers = new ArrayList<>(table.handlerList);
+        handlers.add(eventHandler);
+        table = new DispatchTable(handlers);
+    }
+
+    /**
+     * Unregister an event handler
+     *
+     * @param eventHandler The event handler to unregister
+     * @since 1.4.0
+     */
+    public synchronized void removeEventHandler(EventHandler eventHandler) {
+        List<EventHandler> handlers = new ArrayList<>(table.handlerList);
+        if (handlers.remove(eventHandler)) {
+            table = new DispatchTable(handlers);
+        }
+    }
+
+    /**
+     * Check if any event handler is registered
+     *
+     * @return True if at least one event handler is registered, false if not
+     * @since 1.4.0
+     */
+    public boolean hasEventHandlers() {
+        return table.handlers.length > 0;
+    }
+
+    /**
+     * Check if any registered event handler handles events of a class
+     *
+     * @param eventClass The concrete class of the event
+     * @return True if at least one registered event handler handles events of the class, false if not
+     * @since 1.4.0
+     */
+    public boolean hasEventHandlers(Class<? extends Event> eventClass) {
+        return table.lookup(eventClass).length > 0;
+    }
+
+    /**
+     * Dispatch events to the registered event handlers<br>
+     * Every event handler is called at most once, with the first event in the list that it handles
+     *
+     * @param events The events that occurred (from the most general to the most specific)
+     * @since 1.4.0
+     */
+    @SuppressWarnings("unchecked")
+    public void dispatch(List<? extends Event> events) {
+        DispatchTable current = table;
+        if (current.handlers.length == 0 || events.isEmpty()) {
+            return;
+        }
+        Event[] selected = new Event[current.handlers.length];
+        for (Event event : events) {
+            for (int index : current.lookup(event.getClass())) {
+                if (selected[index] == null) {
+                    selected[index] = event;
+                }
+            }
+        }
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i] != null) {
+                current.handlers[i].handle(selected[i]);
+            }
+        }
+    }
+
+    /**
+     * The class that exposes the registered event handlers as a modifiable list, rebuilding the dispatch table on every change
+     */
+    private final class HandlerList extends AbstractList<EventHandler> {
+
+        @Override
+        public EventHandler get(int index) {
+            return table.handlerList.get(index);
+        }
+
+        @Override
+        public int size() {
+            return table.handlers.length;
+        }
+
+        @Override
+        public EventHandler set(int index, EventHandler eventHandler) {
+            synchronized (EventDispatcher.this) {
+                List<EventHandler> handlers = new ArrayList<>(table.handlerList);
+                EventHandler previous = handlers.set(index, eventHandler);
+                table = new DispatchTable(handlers);
+                return previous;
+            }
+        }
+
+        @Override
+        public void add(int index, EventHandler eventHandler) {
+            synchronized (EventDispatcher.this) {
+                List<EventHandler> handlers = new ArrayList<>(table.handlerList);
+                handlers.add(index, eventHandler);
+                table = new DispatchTable(handlers);
+                modCount++;
+            }
+        }
+
+        @Override
+        public EventHandler remove(int index) {
+            synchronized (EventDispatcher.this) {
+                List<EventHandler> handlers = new ArrayList<>(table.handlerList);
+                EventHandler removed = handlers.remove(index);
+                table = new DispatchTable(handlers);
+                modCount++;
+                return removed;
+            }
+        }
+
+    }
+
+    /**
+     * The class that maps concrete event classes to the positions of the event handlers that handle them
+     */
+    private static final class DispatchTable {
+
+        /**
+         * The registered event handlers (in order of registration)
+         */
+        private final EventHandler[] handlers;
+
+        /**
+         * An unmodifiable list of the registered event handlers (in order of registration)
+         */
+        private final List<EventHandler> handlerList;
+
+        /**
+         * The event types of the registered event handlers
+         */
+        private final Class<?>[] eventTypes;
+
+        /**
+         * The positions of the interested event handlers, by concrete event class
+         */
+        private final ConcurrentMap<Class<?>, int[]> index;
+
+        /**
+         * Construct the DispatchTable class
+         *
+         * @param handlers The registered event handlers (in order of registration)
+         */
+        private DispatchTable(List<EventHandler> handlers) {
+            this.handlers = handlers.toArray(new EventHandler[0]);
+            this.handlerList = Collections.unmodifiableList(Arrays.asList(this.handlers));
+            this.eventTypes = new Class<?>[this.handlers.length];
+            for (int i = 0; i < this.handlers.length; i++) {
+                this.eventTypes[i] = this.handlers[i].getEventType();
+            }
+            this.index = new ConcurrentHashMap<>();
+        }
+
+        /**
+         * Get the positions of the event handlers that handle events of a class
+         *
+         * @param eventClass The concrete class of the event
+         * @return The positions of the interested event handlers
+         */
+        private int[] lookup(Class<?> eventClass) {
+            int[] positions = index.get(eventClass);
+            if (positions == null) {
+                positions = index.computeIfAbsent(eventClass, this::resolve);
+            }
+            return positions;
+        }
+
+        /**
+         * Find the positions of the event handlers that handle events of a class
+         *
+         * @param eventClass The concrete class of the event
+         * @return The positions of the interested event handlers
+         */
+        private int[] resolve(Class<?> eventClass) {
+            int[] positions = new int[eventTypes.length];
+            int count = 0;
+            for (int i = 0; i < eventTypes.length; i++) {
+                if (eventTypes[i].isAssignableFrom(eventClass)) {
+                    positions[count++] = i;
+                }
+            }
+            return Arrays.copyOf(positions, count);
+        }
+
+    }
+
+}
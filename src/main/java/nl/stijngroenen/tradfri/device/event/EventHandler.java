@@ -25,16 +25,23 @@ import java.lang.reflect.ParameterizedType;
  * The class that handles events for IKEA TRÅDFRI devices
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
 public abstract class EventHandler<T extends Event> {
 
+    /**
+     * The class of the event that this event handler handles
+     */
+    private final Class<T> eventType;
+
     /**
      * Construct the EventHandler class
      *
      * @since 1.0.0
      */
+    @SuppressWarnings("unchecked")
     public EventHandler() {
+        this.eventType = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
     }
 
     /**
@@ -51,7 +58,7 @@ public abstract class EventHandler<T extends Event> {
      * @return The class of the event that this event handler handles
      */
     public Class<T> getEventType() {
-        return (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+        return this.eventType;
     }
 
 }
@@ -21,12 +21,13 @@ package nl.stijngroenen.tradfri.device.event;
 
 import nl.stijngroenen.tradfri.device.Light;
 import nl.stijngroenen.tradfri.device.LightProperties;
+import nl.stijngroenen.tradfri.device.PropertiesDiff;
 
 /**
  * The class that represents a light changed event that occurred to an IKEA TRÅDFRI light
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
 public class LightChangeEvent extends LightEvent {
 
@@ -74,4 +75,25 @@ public class LightChangeEvent extends LightEvent {
         return newProperties;
     }
 
+    /**
+     * Get the properties of the light that changed
+     *
+     * @return A bitmask of the properties that changed, see {@link PropertiesDiff}
+     * @since 1.4.0
+     */
+    public int getChanges() {
+        return PropertiesDiff.diff(oldProperties, newProperties);
+    }
+
+    /**
+     * Check if any of the given properties of the light changed
+     *
+     * @param properties The bits of the properties to check, see {@link PropertiesDiff}
+     * @return True if at least one of the properties changed, false if not
+     * @since 1.4.0
+     */
+    public boolean hasChanged(int properties) {
+        return PropertiesDiff.hasChanged(getChanges(), properties);
+    }
+
 }
@@ -0,0 +1,70 @@
+package nl.stijngroenen.tradfri.device.event;
+
+import nl.stijngroenen.tradfri.device.Light;
+import nl.stijngroenen.tradfri.device.LightProperties;
+import nl.stijngroenen.tradfri.device.PropertiesDiff;
+
+/**
+ * The class that represents an event that occurred when the IKEA TRÅDFRI gateway reported different properties for an IKEA TRÅDFRI light than the acknowledged updates<br>
+ * The properties of the light were applied right after the gateway acknowledged the updates, and are now corrected to the reported properties
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class LightCorrectionEvent extends LightEvent {
+
+    /**
+     * The properties the light was expected to have after the acknowledged updates
+     */
+    private final LightProperties expectedProperties;
+
+    /**
+     * The properties of the light reported by the IKEA TRÅDFRI gateway
+     */
+    private final LightProperties reportedProperties;
+
+    /**
+     * Construct the LightCorrectionEvent class
+     *
+     * @param light              The light for which the event occurred
+     * @param expectedProperties The properties the light was expected to have after the acknowledged updates
+     * @param reportedProperties The properties of the light reported by the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public LightCorrectionEvent(Light light, LightProperties expectedProperties, LightProperties reportedProperties) {
+        super(light);
+        this.expectedProperties = expectedProperties;
+        this.reportedProperties = reportedProperties;
+    }
+
+    /**
+     * Get the properties the light was expected to have after the acknowledged updates
+     *
+     * @return The expected properties of the light
+     * @since 1.4.0
+     */
+    public LightProperties getExpectedProperties() {
+        return expectedProperties;
+    }
+
+    /**
+     * Get the properties of the light reported by the IKEA TRÅDFRI gateway
+     *
+     * @return The reported properties of the light
+     * @since 1.4.0
+     */
+    public LightProperties getReportedProperties() {
+        return reportedProperties;
+    }
+
+    /**
+     * Get the properties of the light that were corrected
+     *
+     * @return A bitmask of the properties that differ between the expected and the reported properties, see {@link PropertiesDiff}
+     * @since 1.4.0
+     */
+    public int getCorrections() {
+        return PropertiesDiff.diff(expectedProperties, reportedProperties);
+    }
+
+}
@@ -21,12 +21,13 @@ package nl.stijngroenen.tradfri.device.event;
 
 import nl.stijngroenen.tradfri.device.Plug;
 import nl.stijngroenen.tradfri.device.PlugProperties;
+import nl.stijngroenen.tradfri.device.PropertiesDiff;
 
 /**
  * The class that represents a change event that occurred to an IKEA TRÅDFRI plug
  *
  * @author Stijn Groenen
- * @version 1.0.0
+ * @version 1.4.0
  */
 public class PlugChangeEvent extends PlugEvent {
 
@@ -74,4 +75,25 @@ public class PlugChangeEvent extends PlugEvent {
         return newProperties;
     }
 
+    /**
+     * Get the properties of the plug that changed
+     *
+     * @return A bitmask of the properties that changed, see {@link PropertiesDiff}
+     * @since 1.4.0
+     */
+    public int getChanges() {
+        return PropertiesDiff.diff(oldProperties, newProperties);
+    }
+
+    /**
+     * Check if any of the given properties of the plug changed
+     *
+     * @param properties The bits of the properties to check, see {@link PropertiesDiff}
+     * @return True if at least one of the properties changed, false if not
+     * @since 1.4.0
+     */
+    public boolean hasChanged(int properties) {
+        return PropertiesDiff.hasChanged(getChanges(), properties);
+    }
+
 }
@@ -0,0 +1,70 @@
+package nl.stijngroenen.tradfri.device.event;
+
+import nl.stijngroenen.tradfri.device.Plug;
+import nl.stijngroenen.tradfri.device.PlugProperties;
+import nl.stijngroenen.tradfri.device.PropertiesDiff;
+
+/**
+ * The class that represents an event that occurred when the IKEA TRÅDFRI gateway reported different properties for an IKEA TRÅDFRI plug than the acknowledged updates<br>
+ * The properties of the plug were applied right after the gateway acknowledged the updates, and are now corrected to the reported properties
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class PlugCorrectionEvent extends PlugEvent {
+
+    /**
+     * The properties the plug was expected to have after the acknowledged updates
+     */
+    private final PlugProperties expectedProperties;
+
+    /**
+     * The properties of the plug reported by the IKEA TRÅDFRI gateway
+     */
+    private final PlugProperties reportedProperties;
+
+    /**
+     * Construct the PlugCorrectionEvent class
+     *
+     * @param plug               The plug for which the event occurred
+     * @param expectedProperties The properties the plug was expected to have after the acknowledged updates
+     * @param reportedProperties The properties of the plug reported by the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public PlugCorrectionEvent(Plug plug, PlugProperties expectedProperties, PlugProperties reportedProperties) {
+        super(plug);
+        this.expectedProperties = expectedProperties;
+        this.reportedProperties = reportedProperties;
+    }
+
+    /**
+     * Get the properties the plug was expected to have after the acknowledged updates
+     *
+     * @return The expected properties of the plug
+     * @since 1.4.0
+     */
+    public PlugProperties getExpectedProperties() {
+        return expectedProperties;
+    }
+
+    /**
+     * Get the properties of the plug reported by the IKEA TRÅDFRI gateway
+     *
+     * @return The reported properties of the plug
+     * @since 1.4.0
+     */
+    public PlugProperties getReportedProperties() {
+        return reportedProperties;
+    }
+
+    /**
+     * Get the properties of the plug that were corrected
+     *
+     * @return A bitmask of the properties that differ between the expected and the reported properties, see {@link PropertiesDiff}
+     * @since 1.4.0
+     */
+    public int getCorrections() {
+        return PropertiesDiff.diff(expectedProperties, reportedProperties);
+    }
+
+}
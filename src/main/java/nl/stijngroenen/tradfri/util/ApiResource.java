@@ -0,0 +1,81 @@
+package nl.stijngroenen.tradfri.util;
+
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.OptionSet;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.elements.EndpointContext;
+
+/**
+ * The class that represents a resource of the IKEA TRÅDFRI API on a specific gateway<br>
+ * The destination and the Uri-Path options are resolved once, so a request to the resource needs no string building or URI parsing
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public final class ApiResource {
+
+    /**
+     * The destination of requests to the resource
+     */
+    private final EndpointContext destination;
+
+    /**
+     * The Uri-Path segments of the resource
+     */
+    private final String[] path;
+
+    /**
+     * The URI of the resource
+     */
+    private final String uri;
+
+    /**
+     * Construct the ApiResource class
+     *
+     * @param destination The destination of requests to the resource
+     * @param baseUrl     The base URL of the IKEA TRÅDFRI API on the gateway
+     * @param path        The Uri-Path segments of the resource
+     * @since 1.4.0
+     */
+    ApiResource(EndpointContext destination, String baseUrl, String... path) {
+        this.destination = destination;
+        this.path = path;
+        this.uri = baseUrl + "/" + String.join("/", path);
+    }
+
+    /**
+     * Get the destination of requests to the resource
+     *
+     * @return The destination of requests to the resource
+     * @since 1.4.0
+     */
+    public EndpointContext getDestination() {
+        return this.destination;
+    }
+
+    /**
+     * Get the URI of the resource
+     *
+     * @return The URI of the resource
+     * @since 1.4.0
+     */
+    public String getUri() {
+        return this.uri;
+    }
+
+    /**
+     * Address a request to the resource
+     *
+     * @param request The Request object
+     * @since 1.4.0
+     */
+    public void applyTo(Request request) {
+        request.setScheme(CoAP.COAP_SECURE_URI_SCHEME);
+        request.setDestinationContext(destination);
+        OptionSet options = request.getOptions();
+        for (String segment : path) {
+            options.addUriPath(segment);
+        }
+    }
+
+}
@@ -21,19 +21,46 @@ package nl.stijngroenen.tradfri.util;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.stijngroenen.tradfri.exception.CoapClientException;
 import org.eclipse.californium.core.CoapHandler;
 import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.NoResponseOption;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.coap.Token;
+import org.eclipse.californium.core.config.CoapConfig;
 import org.eclipse.californium.core.network.CoapEndpoint;
 import org.eclipse.californium.core.network.Endpoint;
-import org.eclipse.californium.core.network.EndpointManager;
 import org.eclipse.californium.elements.config.Configuration;
 import org.eclipse.californium.scandium.DTLSConnector;
+import org.eclipse.californium.scandium.config.DtlsConfig;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.dtls.pskstore.AdvancedSinglePskStore;
 
@@ -41,14 +68,14 @@ import org.eclipse.californium.scandium.dtls.pskstore.AdvancedSinglePskStore;
  * The class that is used to communicate with the IKEA TRÅDFRI gateway using the CoAP protocol
  *
  * @author Stijn Groenen
- * @version 1.2.0
+ * @version 1.4.0
  */
 public class CoapClient {
 
     /**
-     * An object mapper used for mapping JSON responses from the IKEA TRÅDFRI gateway to Java classes
+     * The number of consecutive timeouts after which the secure connection is set up again
      */
-    private final ObjectMapper objectMapper;
+    private static final int RECONNECT_AFTER_TIMEOUTS = 2;
 
     /**
      * The credentials used to authenticate the CoAP client to the IKEA TRÅDFRI gateway
@@ -58,165 +85,1561 @@ public class CoapClient {
     /**
      * A DTLS endpoint used to secure the connection between the CoAP client and the IKEA TRÅDFRI gateway
      */
-    private Endpoint dtlsEndpoint;
+    private volatile Endpoint dtlsEndpoint;
 
     /**
-     * The timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
+     * The DTLS connector of the secure connection, which keeps the DTLS session that can be resumed
+     */
+    private DTLSConnector dtlsConnector;
+
+    /**
+     * The credentials the DTLS connector was set up with
+     */
+    private Credentials connectorCredentials;
+
+    /**
+     * The credentials the latest reconnect sets up the secure connection with
+     */
+    private Credentials reconnectCredentials;
+
+    /**
+     * The length of the DTLS Connection ID, or null to not use a DTLS Connection ID
+     */
+    private Integer connectionIdLength;
+
+    /**
+     * The time after which an idle connection is kept alive with a CoAP ping (in milliseconds), or 0 to not keep it alive
+     */
+    private long keepAliveInterval;
+
+    /**
+     * The scheduled check that keeps an idle connection alive, or null
+     */
+    private ScheduledFuture<?> keepAlive;
+
+    /**
+     * The time the last message was sent to the IKEA TRÅDFRI gateway (in nanoseconds)
+     */
+    private volatile long lastActivity = System.nanoTime();
+
+    /**
+     * The state of the connection to the IKEA TRÅDFRI gateway
+     */
+    private volatile ConnectionState connectionState = ConnectionState.CLOSED;
+
+    /**
+     * The reconnect that is running, or null
+     */
+    private volatile CompletableFuture<Void> reconnecting;
+
+    /**
+     * The listeners that are notified when the state of the connection changes
+     */
+    private final List<ConnectionStateListener> connectionStateListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)<br>
+     * It is used until a round-trip time has been measured, and bounds the timeouts derived from the measured round-trip times
+     *
+     * @value 20000
+     */
+    private long timeout = 20000L;
+
+    /**
+     * A scheduler used to time out asynchronous requests to the IKEA TRÅDFRI gateway and to delay work
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * The executor that sets up the secure connection again, so a slow handshake does not hold up the scheduler
+     */
+    private final ExecutorService reconnectExecutor;
+
+    /**
+     * A bounded executor shared by all observers to handle notifications from the IKEA TRÅDFRI gateway
+     */
+    private final ExecutorService notificationExecutor;
+
+    /**
+     * True if the executor that handles notifications was created by the CoAP client and is shut down with it, false if it was provided
+     */
+    private final boolean ownsNotificationExecutor;
+
+    /**
+     * The Californium client shared by all observe relations with the IKEA TRÅDFRI gateway
+     */
+    private final org.eclipse.californium.core.CoapClient observeClient;
+
+    /**
+     * The scheduler that limits the rate of commands sent to the IKEA TRÅDFRI gateway
+     */
+    private final CommandScheduler commandScheduler;
+
+    /**
+     * The limiter that adapts the number of requests in flight to the latency of the IKEA TRÅDFRI gateway
+     */
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * The estimator of the round-trip time to the IKEA TRÅDFRI gateway, used to derive request timeouts
+     */
+    private final RttEstimator rttEstimator;
+
+    /**
+     * The number of requests that timed out since the last response was received
+     */
+    private final AtomicInteger consecutiveTimeouts;
+
+    /**
+     * The supervisor that keeps the observe relations alive
+     */
+    private final ObserveSupervisor observeSupervisor;
+
+    /**
+     * The filter that suppresses writes of properties the IKEA TRÅDFRI gateway already has
+     */
+    private final RedundantWriteFilter redundantWriteFilter;
+
+    /**
+     * The GET requests in flight, by URI, which are shared by all callers that ask for the same URI in the meantime
+     */
+    private final ConcurrentMap<String, PendingGet> pendingGets = new ConcurrentHashMap<>();
+
+    /**
+     * The resources of the IKEA TRÅDFRI API on the gateway the CoAP client communicates with
+     */
+    private GatewayEndpoints endpoints;
+
+    /**
+     * Construct the CoapClient class<br>
+     * The resources of the IKEA TRÅDFRI API are created for the IP-address in {@link ApiEndpoint} when they are first needed
+     *
+     * @since 1.0.0
+     * @deprecated The IP-address in {@link ApiEndpoint} is shared by all gateways, use {@link #CoapClient(GatewayEndpoints)} instead
+     */
+    @Deprecated
+    public CoapClient() {
+        this(null);
+    }
+
+    /**
+     * Construct the CoapClient class
+     *
+     * @param endpoints The resources of the IKEA TRÅDFRI API on the gateway to communicate with (null is deprecated)
+     * @since 1.4.0
+     */
+    public CoapClient(GatewayEndpoints endpoints) {
+        this(endpoints, null);
+    }
+
+    /**
+     * Construct the CoapClient class with an executor to handle notifications from the IKEA TRÅDFRI gateway<br>
+     * A provided executor is not shut down by {@link #shutdown()}, its owner is responsible for it
+     *
+     * @param endpoints            The resources of the IKEA TRÅDFRI API on the gateway to communicate with (null is deprecated)
+     * @param notificationExecutor The executor that handles the notifications of all observe relations, or null to create a bounded executor
+     * @since 1.4.0
+     */
+    public CoapClient(GatewayEndpoints endpoints, ExecutorService notificationExecutor) {
+        this.endpoints = endpoints;
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "tradfri-coap-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        reconnectExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tradfri-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ownsNotificationExecutor = notificationExecutor == null;
+        if (ownsNotificationExecutor) {
+            notificationExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "tradfri-notification");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.notificationExecutor = notificationExecutor;
+        observeClient = new org.eclipse.californium.core.CoapClient();
+        observeClient.setExecutors(this.notificationExecutor, scheduler, true);
+        commandScheduler = new CommandScheduler(scheduler);
+        concurrencyLimiter = new ConcurrencyLimiter();
+        rttEstimator = new RttEstimator();
+        rttEstimator.setMinTimeout(getExchangeLifetime(Configuration.getStandard()));
+        consecutiveTimeouts = new AtomicInteger();
+        observeSupervisor = new ObserveSupervisor(this);
+        redundantWriteFilter = new RedundantWriteFilter();
+    }
+
+    /**
+     * Get the resources of the IKEA TRÅDFRI API on the gateway the CoAP client communicates with<br>
+     * If the CoAP client was constructed without resources, they are created for the deprecated IP-address in {@link ApiEndpoint}
+     *
+     * @return The resources of the IKEA TRÅDFRI API on the gateway
+     * @since 1.4.0
+     */
+    public synchronized GatewayEndpoints getEndpoints() {
+        if (endpoints == null) {
+            endpoints = new GatewayEndpoints(ApiEndpoint.getGatewayIp());
+        }
+        return this.endpoints;
+    }
+
+    /**
+     * Get the scheduler used to delay work
+     *
+     * @return The scheduler used to delay work
+     * @since 1.4.0
+     */
+    public ScheduledExecutorService getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Get the bounded executor shared by all observers to handle notifications from the IKEA TRÅDFRI gateway
+     *
+     * @return The executor shared by all observers
+     * @since 1.4.0
+     */
+    public Executor getNotificationExecutor() {
+        return this.notificationExecutor;
+    }
+
+    /**
+     * Get the scheduler that limits the rate of commands (PUT and POST requests) sent to the IKEA TRÅDFRI gateway
+     *
+     * @return The scheduler that limits the rate of commands
+     * @since 1.4.0
+     */
+    public CommandScheduler getCommandScheduler() {
+        return this.commandScheduler;
+    }
+
+    /**
+     * Get the limiter that adapts the number of requests in flight to the latency of the IKEA TRÅDFRI gateway
+     *
+     * @return The limiter of the number of requests in flight
+     * @since 1.4.0
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    /**
+     * Get the estimator of the round-trip time to the IKEA TRÅDFRI gateway, used to derive request timeouts
+     *
+     * @return The estimator of the round-trip time
+     * @since 1.4.0
+     */
+    public RttEstimator getRttEstimator() {
+        return this.rttEstimator;
+    }
+
+    /**
+     * Get the supervisor that keeps the observe relations alive
+     *
+     * @return The supervisor of the observe relations
+     * @since 1.4.0
+     */
+    public ObserveSupervisor getObserveSupervisor() {
+        return this.observeSupervisor;
+    }
+
+    /**
+     * Get the filter that suppresses writes of properties the IKEA TRÅDFRI gateway already has
+     *
+     * @return The filter of redundant writes
+     * @since 1.4.0
+     */
+    public RedundantWriteFilter getRedundantWriteFilter() {
+        return this.redundantWriteFilter;
+    }
+
+    /**
+     * Get the credentials used to communicate with the IKEA TRÅDFRI gateway
+     *
+     * @return The credentials that can be used to authenticate to the IKEA TRÅDFRI gateway
+     * @since 1.0.0
+     */
+    public Credentials getCredentials() {
+        return this.credentials;
+    }
+
+    /**
+     * Change the credentials used to communicate with the IKEA TRÅDFRI gateway<br>
+     * This method waits until the secure connection is set up with the new credentials
+     *
+     * @param credentials The new credentials that can be used to authenticate to the IKEA TRÅDFRI gateway
+     * @since 1.0.0
+     */
+    public void setCredentials(Credentials credentials) {
+        synchronized (this) {
+            this.credentials = credentials;
+        }
+        try {
+            reconnect().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    /**
+     * Get the state of the connection to the IKEA TRÅDFRI gateway
+     *
+     * @return The state of the connection
+     * @since 1.4.0
+     */
+    public ConnectionState getConnectionState() {
+        return this.connectionState;
+    }
+
+    /**
+     * Add a listener that is notified when the state of the connection to the IKEA TRÅDFRI gateway changes
+     *
+     * @param listener The listener to add
+     * @since 1.4.0
+     */
+    public void addConnectionStateListener(ConnectionStateListener listener) {
+        connectionStateListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener that is notified when the state of the connection to the IKEA TRÅDFRI gateway changes
+     *
+     * @param listener The listener to remove
+     * @since 1.4.0
+     */
+    public void removeConnectionStateListener(ConnectionStateListener listener) {
+        connectionStateListeners.remove(listener);
+    }
+
+    /**
+     * Set up the secure connection to the IKEA TRÅDFRI gateway again<br>
+     * Only one reconnect runs at a time, callers that ask for a reconnect while one is running share its result.
+     * If the credentials changed since the running reconnect was started, another reconnect with the new credentials follows it.
+     * Requests made while reconnecting wait for the new connection before they are sent.
+     * If the credentials did not change, the DTLS session is resumed with an abbreviated handshake instead of a full handshake.
+     * The connection is set up on a dedicated thread, so this method does not block.
+     *
+     * @return A future that completes once the new connection is set up
+     * @since 1.4.0
+     */
+    public CompletableFuture<Void> reconnect() {
+        CompletableFuture<Void> future;
+        Credentials newCredentials;
+        synchronized (this) {
+            if (reconnecting != null && reconnectCredentials == credentials) {
+                return reconnecting;
+            }
+            future = new CompletableFuture<>();
+            reconnecting = future;
+            reconnectCredentials = credentials;
+            newCredentials = credentials;
+        }
+        try {
+            reconnectExecutor.execute(() -> setUpConnection(future, newCredentials));
+        } catch (RejectedExecutionException e) {
+            finishReconnect(future);
+            future.completeExceptionally(new CoapClientException("Could not set up a secure connection to the IKEA TRÅDFRI gateway, the CoAP client was shut down", e));
+        }
+        return future;
+    }
+
+    /**
+     * Set up the secure connection to the IKEA TRÅDFRI gateway for a reconnect<br>
+     * Reconnects run one after another on the reconnect thread.
+     * A reconnect that was followed by a reconnect with newer credentials before it started completes with the newer reconnect instead.
+     *
+     * @param future      The future of the reconnect, which completes once the new connection is set up
+     * @param credentials The credentials to set up the secure connection with
+     * @since 1.4.0
+     */
+    private void setUpConnection(CompletableFuture<Void> future, Credentials credentials) {
+        CompletableFuture<Void> latest = reconnecting;
+        if (latest != null && latest != future) {
+            latest.whenComplete((result, error) -> {
+                if (error == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            });
+            return;
+        }
+        changeConnectionState(ConnectionState.RECONNECTING);
+        try {
+            if (!resumeDtlsSession(credentials)) {
+                updateDtlsConnector(credentials);
+            }
+        } catch (IOException | RuntimeException e) {
+            finishReconnect(future);
+            changeConnectionState(ConnectionState.CLOSED);
+            future.completeExceptionally(new CoapClientException("Could not set up a secure connection to the IKEA TRÅDFRI gateway", e));
+            return;
+        }
+        finishReconnect(future);
+        consecutiveTimeouts.set(0);
+        changeConnectionState(ConnectionState.CONNECTED);
+        future.complete(null);
+    }
+
+    /**
+     * Mark a reconnect as finished, unless a newer reconnect was started in the meantime
+     *
+     * @param future The future of the reconnect
+     * @since 1.4.0
+     */
+    private synchronized void finishReconnect(CompletableFuture<Void> future) {
+        if (reconnecting == future) {
+            reconnecting = null;
+        }
+    }
+
+    /**
+     * Close the secure connection to the IKEA TRÅDFRI gateway<br>
+     * Requests fail until new credentials are set or {@link #reconnect()} is called
+     *
+     * @since 1.4.0
+     */
+    public void close() {
+        Endpoint endpoint;
+        synchronized (this) {
+            endpoint = dtlsEndpoint;
+            dtlsEndpoint = null;
+            dtlsConnector = null;
+            connectorCredentials = null;
+        }
+        if (endpoint != null) {
+            endpoint.destroy();
+        }
+        changeConnectionState(ConnectionState.CLOSED);
+    }
+
+    /**
+     * Release everything the CoAP client holds: the observe relations, the secure connection, the queued commands and the threads<br>
+     * The CoAP client cannot be used anymore afterwards
+     *
+     * @since 1.4.0
+     */
+    public void shutdown() {
+        observeSupervisor.stopAll();
+        setKeepAliveInterval(0L);
+        commandScheduler.cancelAll("The command was cancelled because the CoAP client was shut down");
+        close();
+        observeClient.shutdown();
+        scheduler.shutdownNow();
+        reconnectExecutor.shutdownNow();
+        if (ownsNotificationExecutor) {
+            notificationExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Change the state of the connection to the IKEA TRÅDFRI gateway, and notify the listeners if it changed
+     *
+     * @param newState The new state of the connection
+     * @since 1.4.0
+     */
+    private void changeConnectionState(ConnectionState newState) {
+        ConnectionState oldState;
+        synchronized (this) {
+            oldState = connectionState;
+            connectionState = newState;
+        }
+        if (oldState == newState) {
+            return;
+        }
+        for (ConnectionStateListener listener : connectionStateListeners) {
+            listener.onConnectionStateChanged(oldState, newState);
+        }
+    }
+
+    /**
+     * Mark the connection as degraded after a request timed out, and reconnect if requests keep timing out
+     *
+     * @since 1.4.0
+     */
+    private void onTimeout() {
+        rttEstimator.backOff();
+        boolean degraded;
+        synchronized (this) {
+            if (connectionState != ConnectionState.CONNECTED && connectionState != ConnectionState.DEGRADED) {
+                return;
+            }
+            degraded = connectionState == ConnectionState.CONNECTED;
+            connectionState = ConnectionState.DEGRADED;
+        }
+        if (degraded) {
+            for (ConnectionStateListener listener : connectionStateListeners) {
+                listener.onConnectionStateChanged(ConnectionState.CONNECTED, ConnectionState.DEGRADED);
+            }
+        }
+        if (consecutiveTimeouts.incrementAndGet() >= RECONNECT_AFTER_TIMEOUTS) {
+            reconnect();
+        }
+    }
+
+    /**
+     * Mark the connection as connected again after a response was received
+     *
+     * @since 1.4.0
+     */
+    private void onResponseReceived() {
+        consecutiveTimeouts.set(0);
+        if (connectionState != ConnectionState.DEGRADED) {
+            return;
+        }
+        synchronized (this) {
+            if (connectionState != ConnectionState.DEGRADED) {
+                return;
+            }
+            connectionState = ConnectionState.CONNECTED;
+        }
+        for (ConnectionStateListener listener : connectionStateListeners) {
+            listener.onConnectionStateChanged(ConnectionState.DEGRADED, ConnectionState.CONNECTED);
+        }
+    }
+
+    /**
+     * Make the next message to the IKEA TRÅDFRI gateway resume the DTLS session with an abbreviated handshake<br>
+     * The gateway falls back to a full handshake if it no longer knows the session
+     *
+     * @param credentials The credentials the secure connection has to use
+     * @return True if the DTLS session will be resumed, false if the secure connection has to be set up with new credentials
+     * @since 1.4.0
+     */
+    private synchronized boolean resumeDtlsSession(Credentials credentials) {
+        if (dtlsConnector == null || !dtlsConnector.isRunning() || connectorCredentials != credentials) {
+            return false;
+        }
+        dtlsConnector.forceResumeSessionFor(getEndpoints().getDevices().getDestination().getPeerAddress());
+        return true;
+    }
+
+    /**
+     * Set up a secure connection between the CoAP client and the IKEA TRÅDFRI gateway<br>
+     * The new connection replaces the previous connection before the previous connection is destroyed
+     *
+     * @param newCredentials The credentials to set up the secure connection with
+     * @throws IOException Thrown if a failure to open a connection between the CoAP client and the IKEA TRÅDFRI gateway occurs
+     * @since 1.0.0
+     */
+    private void updateDtlsConnector(Credentials newCredentials) throws IOException {
+        AdvancedSinglePskStore advancedPskStore =
+            new AdvancedSinglePskStore(newCredentials.getIdentity(), newCredentials.getKey().getBytes());
+        DtlsConnectorConfig.Builder dtlsConnectorConfigBuilder = DtlsConnectorConfig.builder(Configuration.getStandard())
+            .setAddress(new InetSocketAddress(0))
+            .setAdvancedPskStore(advancedPskStore);
+        if (connectionIdLength != null) {
+            dtlsConnectorConfigBuilder.set(DtlsConfig.DTLS_CONNECTION_ID_LENGTH, connectionIdLength);
+        }
+        DtlsConnectorConfig dtlsConnectorConfig = dtlsConnectorConfigBuilder.build();
+
+
+        DTLSConnector dtlsconnector = new DTLSConnector(dtlsConnectorConfig);
+
+        Endpoint newEndpoint = CoapEndpoint.builder()
+            .setConnector(dtlsconnector)
+            .build();
+        newEndpoint.start();
+        Endpoint oldEndpoint;
+        synchronized (this) {
+            oldEndpoint = dtlsEndpoint;
+            dtlsEndpoint = newEndpoint;
+            dtlsConnector = dtlsconnector;
+            connectorCredentials = newCredentials;
+        }
+        if (oldEndpoint != null) {
+            oldEndpoint.destroy();
+        }
+    }
+
+    /**
+     * Get the length of the DTLS Connection ID
+     *
+     * @return The length of the DTLS Connection ID, or null if no DTLS Connection ID is used
+     * @since 1.4.0
+     */
+    public synchronized Integer getConnectionIdLength() {
+        return this.connectionIdLength;
+    }
+
+    /**
+     * Change the length of the DTLS Connection ID<br>
+     * A DTLS Connection ID keeps the DTLS session usable when the address of the CoAP client changes, if the IKEA TRÅDFRI gateway supports it.
+     * The new length is used the next time the secure connection is set up with new credentials.
+     *
+     * @param connectionIdLength The new length of the DTLS Connection ID, 0 to only accept a DTLS Connection ID from the gateway, or null to not use a DTLS Connection ID
+     * @since 1.4.0
+     */
+    public synchronized void setConnectionIdLength(Integer connectionIdLength) {
+        this.connectionIdLength = connectionIdLength == null ? null : Math.max(connectionIdLength, 0);
+    }
+
+    /**
+     * Get the time after which an idle connection is kept alive with a CoAP ping (in milliseconds)
+     *
+     * @return The keep-alive interval (in milliseconds), or 0 if the connection is not kept alive
+     * @since 1.4.0
+     */
+    public synchronized long getKeepAliveInterval() {
+        return this.keepAliveInterval;
+    }
+
+    /**
+     * Change the time after which an idle connection is kept alive with a CoAP ping (in milliseconds)<br>
+     * Keeping the connection alive stops the IKEA TRÅDFRI gateway from expiring the DTLS session while no requests are made.
+     *
+     * @param keepAliveInterval The new keep-alive interval (in milliseconds), or 0 to not keep the connection alive
+     * @since 1.4.0
+     */
+    public synchronized void setKeepAliveInterval(long keepAliveInterval) {
+        this.keepAliveInterval = Math.max(keepAliveInterval, 0L);
+        if (keepAlive != null) {
+            keepAlive.cancel(false);
+            keepAlive = null;
+        }
+        if (this.keepAliveInterval > 0) {
+            long interval = this.keepAliveInterval;
+            keepAlive = scheduler.scheduleWithFixedDelay(() -> keepAliveIfIdle(interval), interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send a CoAP ping if the connection has been idle for the keep-alive interval
+     *
+     * @param interval The keep-alive interval (in milliseconds)
+     * @since 1.4.0
+     */
+    private void keepAliveIfIdle(long interval) {
+        ConnectionState state = connectionState;
+        if (state != ConnectionState.CONNECTED && state != ConnectionState.DEGRADED) {
+            return;
+        }
+        if (System.nanoTime() - lastActivity >= TimeUnit.MILLISECONDS.toNanos(interval)) {
+            ping();
+        }
+    }
+
+    /**
+     * Perform the DTLS handshake with the IKEA TRÅDFRI gateway now, so the first request does not have to wait for it<br>
+     * The handshake is triggered by a CoAP ping, which the gateway answers without handling a request
+     *
+     * @return A future that completes once the IKEA TRÅDFRI gateway answered, or completes exceptionally if it did not answer in time
+     * @since 1.4.0
+     */
+    public CompletableFuture<Void> handshake() {
+        return ping();
+    }
+
+    /**
+     * Send a CoAP ping (an empty confirmable message) to the IKEA TRÅDFRI gateway, which the gateway answers with a reset message
+     *
+     * @return A future that completes once the IKEA TRÅDFRI gateway answered, or completes exceptionally if it did not answer in time
+     * @since 1.4.0
+     */
+    public CompletableFuture<Void> ping() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        String endpoint = getEndpoints().getBaseUrl();
+        Request request = Request.newPing();
+        request.setToken(Token.EMPTY);
+        request.setScheme(CoAP.COAP_SECURE_URI_SCHEME);
+        request.setDestinationContext(getEndpoints().getDevices().getDestination());
+        request.addMessageObserver(new MessageObserverAdapter() {
+            @Override
+            public void onReject() {
+                onResponseReceived();
+                future.complete(null);
+            }
+
+            @Override
+            public void onResponse(Response response) {
+                onResponseReceived();
+                future.complete(null);
+            }
+
+            @Override
+            public void onCancel() {
+                future.completeExceptionally(new CoapClientException("The ping to " + endpoint + " was cancelled"));
+            }
+
+            @Override
+            public void onSendError(Throwable error) {
+                future.completeExceptionally(new CoapClientException("The ping to " + endpoint + " could not be sent", error));
+            }
+        });
+        CompletableFuture<Void> pendingReconnect = reconnecting;
+        if (pendingReconnect == null) {
+            send(request, endpoint, future, timeout, null, null);
+        } else {
+            pendingReconnect.whenComplete((result, error) -> send(request, endpoint, future, timeout, null, null));
+        }
+        return future;
+    }
+
+    /**
+     * Get timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
+     *
+     * @return The timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
+     * @since 1.2.0
+     */
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Change the timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)<br>
+     * Once round-trip times have been measured, requests can time out sooner, but never before every retransmission went unanswered, see {@link RttEstimator}
+     *
+     * @param timeout The new timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
+     * @since 1.2.0
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Make an asynchronous CoAP request to the specified resource<br>
+     * The request is addressed with the pre-built options of the resource, so no URI needs to be built or parsed
+     *
+     * @param request        The Request object
+     * @param resource       The resource to make a request to
+     * @param responseType   The expected type of response
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param <T>            The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    private <T> CompletableFuture<T> requestAsync(Request request, ApiResource resource, Class<T> responseType, long requestTimeout) {
+        resource.applyTo(request);
+        return sendAsync(request, resource.getUri(), responseType, requestTimeout);
+    }
+
+    /**
+     * Make an asynchronous CoAP request to the specified endpoint
+     *
+     * @param request      The Request object
+     * @param endpoint     The endpoint to make a request to
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    private <T> CompletableFuture<T> requestAsync(Request request, String endpoint, Class<T> responseType) {
+        request.setURI(endpoint);
+        return sendAsync(request, endpoint, responseType, 0L);
+    }
+
+    /**
+     * Send an addressed CoAP request<br>
+     * Unless a timeout is given, the request times out after the smoothed round-trip time plus four times its variance, but never before every retransmission went unanswered,
+     * see {@link RttEstimator}
+     *
+     * @param request        The addressed Request object
+     * @param endpoint       The endpoint the request is addressed to
+     * @param responseType   The expected type of response
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param <T>            The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    private <T> CompletableFuture<T> sendAsync(Request request, String endpoint, Class<T> responseType, long requestTimeout) {
+        return decode(sendRawAsync(request, endpoint, requestTimeout), responseType);
+    }
+
+    /**
+     * Send an addressed CoAP request, without converting its response<br>
+     * Unless a timeout is given, the request times out after the smoothed round-trip time plus four times its variance, but never before every retransmission went unanswered,
+     * see {@link RttEstimator}
+     *
+     * @param request        The addressed Request object
+     * @param endpoint       The endpoint the request is addressed to
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    private CompletableFuture<Response> sendRawAsync(Request request, String endpoint, long requestTimeout) {
+        return sendRawAsync(request, endpoint, requestTimeout, null);
+    }
+
+    /**
+     * Send an addressed CoAP request with a deadline that can be extended while it is in flight, without converting its response
+     *
+     * @param request          The addressed Request object
+     * @param endpoint         The endpoint the request is addressed to
+     * @param requestTimeout   The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param extendedDeadline The time until which the request does not time out (in nanoseconds), which can be raised while it is in flight, or null
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    private CompletableFuture<Response> sendRawAsync(Request request, String endpoint, long requestTimeout, AtomicLong extendedDeadline) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        AtomicLong sentAt = new AtomicLong();
+        AtomicBoolean retransmitted = new AtomicBoolean();
+        request.addMessageObserver(new MessageObserverAdapter() {
+            @Override
+            public void onRetransmission() {
+                retransmitted.set(true);
+            }
+
+            @Override
+            public void onResponse(Response response) {
+                onResponseReceived();
+                if (!retransmitted.get()) {
+                    rttEstimator.addSample((System.nanoTime() - sentAt.get()) / 1_000_000.0);
+                }
+                future.complete(response);
+            }
+
+            @Override
+            public void onReject() {
+                future.completeExceptionally(new CoapClientException("The request to " + endpoint + " was rejected"));
+            }
+
+            @Override
+            public void onCancel() {
+                future.completeExceptionally(new CoapClientException("The request to " + endpoint + " was cancelled"));
+            }
+
+            @Override
+            public void onSendError(Throwable error) {
+                future.completeExceptionally(new CoapClientException("The request to " + endpoint + " could not be sent", error));
+            }
+        });
+        concurrencyLimiter.execute(() -> {
+            future.whenComplete((response, error) -> {
+                long sent = sentAt.get();
+                if (sent == 0L) {
+                    concurrencyLimiter.release();
+                } else {
+                    concurrencyLimiter.release(System.nanoTime() - sent, isTimeout(error));
+                }
+            });
+            CompletableFuture<Void> pendingReconnect = reconnecting;
+            if (pendingReconnect == null) {
+                send(request, endpoint, future, requestTimeout, extendedDeadline, sentAt);
+            } else {
+                pendingReconnect.whenComplete((result, error) -> send(request, endpoint, future, requestTimeout, extendedDeadline, sentAt));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Send a CoAP request on the secure connection to the IKEA TRÅDFRI gateway, and schedule its timeout
+     *
+     * @param request          The addressed Request object
+     * @param endpoint         The endpoint the request is addressed to
+     * @param future           The future that completes with the response to the request
+     * @param requestTimeout   The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param extendedDeadline The time until which the request does not time out (in nanoseconds), or null
+     * @param sentAt           The time the request is sent, which is set once any pending reconnect completed (in nanoseconds), or null
+     * @since 1.4.0
+     */
+    private void send(Request request, String endpoint, CompletableFuture<?> future, long requestTimeout, AtomicLong extendedDeadline, AtomicLong sentAt) {
+        if (future.isDone()) {
+            return;
+        }
+        Endpoint endpointToUse = dtlsEndpoint;
+        if (endpointToUse == null) {
+            future.completeExceptionally(new CoapClientException("The request to " + endpoint + " could not be sent, there is no secure connection to the IKEA TRÅDFRI gateway"));
+            return;
+        }
+        long now = System.nanoTime();
+        lastActivity = now;
+        if (sentAt != null) {
+            sentAt.set(now);
+        }
+        request.send(endpointToUse);
+        long timeoutToUse = requestTimeout > 0 ? requestTimeout : rttEstimator.getTimeout(timeout);
+        scheduleTimeout(request, endpoint, future, timeoutToUse, extendedDeadline);
+    }
+
+    /**
+     * Get the longest time a confirmable request can take until its last retransmission is given up (in milliseconds)<br>
+     * The first acknowledgement timeout is randomized up to the acknowledgement timeout times the random factor, and doubles with every retransmission,
+     * so waiting for all retransmissions takes up to that initial timeout times 2^(MAX_RETRANSMIT + 1) - 1
+     *
+     * @param configuration The configuration of the CoAP endpoint
+     * @return The exchange lifetime of a confirmable request (in milliseconds)
+     * @since 1.4.0
+     */
+    private static long getExchangeLifetime(Configuration configuration) {
+        long ackTimeout = configuration.get(CoapConfig.ACK_TIMEOUT, TimeUnit.MILLISECONDS);
+        float ackRandomFactor = configuration.get(CoapConfig.ACK_INIT_RANDOM);
+        int retransmissions = Math.min(configuration.get(CoapConfig.MAX_RETRANSMIT), 30);
+        return (long) Math.ceil(ackTimeout * ackRandomFactor * ((1L << (retransmissions + 1)) - 1));
+    }
+
+    /**
+     * Check if a request failed because no response was received in time
+     *
+     * @param error The reason the request failed, or null
+     * @return True if the request timed out, false if not
+     * @since 1.4.0
+     */
+    private static boolean isTimeout(Throwable error) {
+        return error instanceof CoapClientException && error.getCause() instanceof TimeoutException;
+    }
+
+    /**
+     * Schedule the timeout of an asynchronous CoAP request<br>
+     * A timeout doubles the next timeouts until a response is received, and consecutive timeouts set up the secure connection again.
+     * A timeout derived from the measured round-trip times is never shorter than the exchange lifetime of a confirmable request,
+     * so it only fires once every retransmission went unanswered, and counts towards setting up the secure connection again like any other timeout.
+     * A lost gateway is therefore detected after {@value #RECONNECT_AFTER_TIMEOUTS} consecutive timeouts, as with fixed timeouts.
+     * If the deadline was extended beyond the timeout in the meantime, the request is given until the extended deadline.
+     *
+     * @param request          The Request object
+     * @param endpoint         The endpoint the request is addressed to
+     * @param future           The future that completes with the response to the request
+     * @param requestTimeout   The timeout for the request (in milliseconds)
+     * @param extendedDeadline The time until which the request does not time out (in nanoseconds), or null
+     * @since 1.4.0
+     */
+    private void scheduleTimeout(Request request, String endpoint, CompletableFuture<?> future, long requestTimeout, AtomicLong extendedDeadline) {
+        long sentAt = System.nanoTime();
+        AtomicReference<ScheduledFuture<?>> scheduledTimeout = new AtomicReference<>();
+        Runnable timeoutCheck = new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                long deadline = extendedDeadline == null ? 0L : extendedDeadline.get();
+                long remaining = deadline - System.nanoTime();
+                if (deadline != 0L && remaining > 0) {
+                    scheduledTimeout.set(scheduler.schedule(this, remaining, TimeUnit.NANOSECONDS));
+                    return;
+                }
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentAt);
+                future.completeExceptionally(new CoapClientException(new TimeoutException("No response received from " + endpoint + " within " + waited + " ms")));
+                request.cancel();
+                onTimeout();
+            }
+        };
+        scheduledTimeout.set(scheduler.schedule(timeoutCheck, requestTimeout, TimeUnit.MILLISECONDS));
+        future.whenComplete((response, error) -> scheduledTimeout.get().cancel(false));
+    }
+
+    /**
+     * Convert the response of a CoAP request to the expected response type once it arrives<br>
+     * Every caller gets its own future, so callers that share a request cannot complete or cancel it for each other
+     *
+     * @param response     The future that completes with the response from the IKEA TRÅDFRI gateway
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    private <T> CompletableFuture<T> decode(CompletableFuture<Response> response, Class<T> responseType) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        response.whenComplete((result, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+                return;
+            }
+            try {
+                future.complete(convertResponse(result, responseType));
+            } catch (CoapClientException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Make a CoAP GET request, or join the GET request to the same URI that is already in flight<br>
+     * The caller gets its own future, which fails when its own timeout passes, even if the shared request is still in flight.
+     * A caller with a longer timeout extends the deadline of the shared request, so it does not fail with the timeout of the caller that sent it.
+     *
+     * @param uri            The URI of the GET request
+     * @param request        A supplier of the addressed GET request, used if no GET request to the URI is in flight
+     * @param responseType   The expected type of response
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param <T>            The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    private <T> CompletableFuture<T> collapsedGetAsync(String uri, Supplier<Request> request, Class<T> responseType, long requestTimeout) {
+        PendingGet pending = pendingGets.get(uri);
+        if (pending == null) {
+            PendingGet created = new PendingGet();
+            pending = pendingGets.putIfAbsent(uri, created);
+            if (pending == null) {
+                pending = created;
+                sendRawAsync(request.get(), uri, requestTimeout, created.deadline).whenComplete((result, error) -> {
+                    pendingGets.remove(uri, created);
+                    if (error != null) {
+                        created.response.completeExceptionally(error);
+                    } else {
+                        created.response.complete(result);
+                    }
+                });
+            }
+        }
+        if (requestTimeout > 0) {
+            long callerDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeout);
+            pending.deadline.accumulateAndGet(callerDeadline, (current, candidate) -> current == 0L || candidate - current > 0 ? candidate : current);
+        }
+        CompletableFuture<Response> response = pending.response;
+        CompletableFuture<T> future = decode(response, responseType);
+        if (requestTimeout > 0 && !future.isDone()) {
+            ScheduledFuture<?> deadline = scheduler.schedule(
+                () -> future.completeExceptionally(new CoapClientException(new TimeoutException("No response received from " + uri + " within " + requestTimeout + " ms"))),
+                requestTimeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, error) -> deadline.cancel(false));
+        }
+        return future;
+    }
+
+    /**
+     * Convert a CoAP response to the expected response type<br>
+     * The payload is decoded directly from its bytes, it is only converted to a String if a String is expected
+     *
+     * @param response     The response from the IKEA TRÅDFRI gateway
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return The response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T convertResponse(Response response, Class<T> responseType) {
+        if (responseType == String.class) {
+            return (T) response.getPayloadString();
+        }
+        try {
+            return JsonCodec.read(response.getPayload(), responseType);
+        } catch (IOException e) {
+            throw new CoapClientException(e);
+        }
+    }
+
+    /**
+     * Make an asynchronous CoAP request with a payload to the specified resource
      *
-     * @value 20000
+     * @param request        The Request object
+     * @param resource       The resource to make a request to
+     * @param payload        The payload to send in the request
+     * @param responseType   The expected type of response
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param <T>            The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
      */
-    private long timeout = 20000L;
+    private <T> CompletableFuture<T> requestWithPayloadAsync(Request request, ApiResource resource, Object payload, Class<T> responseType, long requestTimeout) {
+        try {
+            setPayload(request, payload);
+        } catch (IOException e) {
+            return serializationFailure(resource.getUri(), e);
+        }
+        return requestAsync(request, resource, responseType, requestTimeout);
+    }
 
     /**
-     * Construct the CoapClient class
+     * Make an asynchronous CoAP request with a payload to the specified endpoint
      *
-     * @since 1.0.0
+     * @param request      The Request object
+     * @param endpoint     The endpoint to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
      */
-    public CoapClient() {
-        objectMapper = new ObjectMapper();
+    private <T> CompletableFuture<T> requestWithPayloadAsync(Request request, String endpoint, Object payload, Class<T> responseType) {
+        try {
+            setPayload(request, payload);
+        } catch (IOException e) {
+            return serializationFailure(endpoint, e);
+        }
+        return requestAsync(request, endpoint, responseType);
     }
 
     /**
-     * Get the credentials used to communicate with the IKEA TRÅDFRI gateway
+     * Serialize a payload into a CoAP request
      *
-     * @return The credentials that can be used to authenticate to the IKEA TRÅDFRI gateway
-     * @since 1.0.0
+     * @param request The Request object
+     * @param payload The payload to send in the request
+     * @throws IOException Thrown if the payload could not be serialized
+     * @since 1.4.0
      */
-    public Credentials getCredentials() {
-        return this.credentials;
+    private void setPayload(Request request, Object payload) throws IOException {
+        request.setPayload(JsonCodec.write(payload));
+        request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_JSON);
     }
 
     /**
-     * Change the credentials used to communicate with the IKEA TRÅDFRI gateway
+     * Create a future for a request of which the payload could not be serialized
      *
-     * @param credentials The new credentials that can be used to authenticate to the IKEA TRÅDFRI gateway
-     * @since 1.0.0
+     * @param endpoint The endpoint of the request
+     * @param error    The reason the payload could not be serialized
+     * @param <T>      The expected type of response
+     * @return A future that is completed with a {@link CoapClientException}
+     * @since 1.4.0
      */
-    public void setCredentials(Credentials credentials) {
-        this.credentials = credentials;
+    private <T> CompletableFuture<T> serializationFailure(String endpoint, IOException error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new CoapClientException("Could not serialize the payload for " + endpoint, error));
+        return future;
+    }
+
+    /**
+     * Wait for an asynchronous CoAP request to complete
+     *
+     * @param future The future that completes with the response to the request
+     * @param <T>    The expected type of response
+     * @return The response from the IKEA TRÅDFRI gateway, or null if no response was received
+     * @since 1.4.0
+     */
+    private <T> T await(CompletableFuture<T> future) {
         try {
-            updateDtlsConnector();
-        } catch (IOException ignored) {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CoapClientException && e.getCause().getCause() instanceof IOException) {
+                throw (CoapClientException) e.getCause();
+            }
+            return null;
         }
     }
 
+
     /**
-     * Set up a secure connection between the CoAP client and the IKEA TRÅDFRI gateway
+     * Make a CoAP observe request to the specified endpoint<br>
+     * The registration waits for a place in flight like any other request, and keeps it until its first response arrives.
+     * All observe relations share one Californium client, which calls the handlers on the notification executor.
+     * The registration is only sent over the secure connection, never over an unsecured default endpoint.
+     * If the secure connection is being set up again, this method waits until it is set up.
      *
-     * @throws IOException Thrown if a failure to open a connection between the CoAP client and the IKEA TRÅDFRI gateway occurs
+     * @param endpoint The endpoint to make a request to
+     * @param handler  The handler to handle the responses from the observe request
+     * @return The observe relation that represents the connection to the IKEA TRÅDFRI gateway
+     * @throws CoapClientException Thrown if there is no secure connection to the IKEA TRÅDFRI gateway
      * @since 1.0.0
      */
-    private void updateDtlsConnector() throws IOException {
-        if (dtlsEndpoint != null) {
-            dtlsEndpoint.destroy();
-        }
-        AdvancedSinglePskStore advancedPskStore =
-            new AdvancedSinglePskStore(credentials.getIdentity(), credentials.getKey().getBytes());
-        DtlsConnectorConfig dtlsConnectorConfig = DtlsConnectorConfig.builder(Configuration.getStandard())
-            .setAddress(new InetSocketAddress(0))
-            .setAdvancedPskStore(advancedPskStore)
-            .build();
+    public CoapObserveRelation requestObserve(String endpoint, CoapHandler handler) {
+        return awaitObserveRelation(requestObserveAsync(endpoint, handler));
+    }
 
+    /**
+     * Make a CoAP observe request to the specified resource<br>
+     * The pre-built options of the resource are applied to the request, no URI is parsed.
+     * If the secure connection is being set up again, this method waits until it is set up.
+     *
+     * @param resource The resource to make a request to
+     * @param handler  The handler to handle the responses from the observe request
+     * @return The observe relation that represents the connection to the IKEA TRÅDFRI gateway
+     * @throws CoapClientException Thrown if there is no secure connection to the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public CoapObserveRelation requestObserve(ApiResource resource, CoapHandler handler) {
+        return awaitObserveRelation(requestObserveAsync(resource, handler));
+    }
 
-        DTLSConnector dtlsconnector = new DTLSConnector(dtlsConnectorConfig);
+    /**
+     * Make an asynchronous CoAP observe request to the specified endpoint<br>
+     * A registration made while the secure connection is being set up again is sent once it is set up, instead of failing.
+     *
+     * @param endpoint The endpoint to make a request to
+     * @param handler  The handler to handle the responses from the observe request
+     * @return A future that completes with the observe relation once the registration is sent,
+     * or completes exceptionally with a {@link CoapClientException} if there is no secure connection to the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public CompletableFuture<CoapObserveRelation> requestObserveAsync(String endpoint, CoapHandler handler) {
+        Request request = Request.newGet();
+        request.setURI(endpoint);
+        return requestObserveAsync(request, endpoint, handler);
+    }
 
-        dtlsEndpoint = CoapEndpoint.builder()
-            .setConnector(dtlsconnector)
-            .build();
-        EndpointManager.getEndpointManager().setDefaultEndpoint(dtlsEndpoint);
-        dtlsEndpoint.start();
+    /**
+     * Make an asynchronous CoAP observe request to the specified resource<br>
+     * A registration made while the secure connection is being set up again is sent once it is set up, instead of failing.
+     *
+     * @param resource The resource to make a request to
+     * @param handler  The handler to handle the responses from the observe request
+     * @return A future that completes with the observe relation once the registration is sent,
+     * or completes exceptionally with a {@link CoapClientException} if there is no secure connection to the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public CompletableFuture<CoapObserveRelation> requestObserveAsync(ApiResource resource, CoapHandler handler) {
+        Request request = Request.newGet();
+        resource.applyTo(request);
+        return requestObserveAsync(request, resource.getUri(), handler);
     }
 
     /**
-     * Get timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
+     * Make an asynchronous CoAP observe request with a GET request that is addressed to the IKEA TRÅDFRI gateway<br>
+     * The registration waits for a place in flight, and if the secure connection is being set up again, until it is set up.
      *
-     * @return The timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
-     * @since 1.2.0
+     * @param request  The GET request to register as observe request
+     * @param endpoint The endpoint the request is addressed to, used in error messages
+     * @param handler  The handler to handle the responses from the observe request
+     * @return A future that completes with the observe relation once the registration is sent
+     * @since 1.4.0
      */
-    public long getTimeout() {
-        return this.timeout;
+    private CompletableFuture<CoapObserveRelation> requestObserveAsync(Request request, String endpoint, CoapHandler handler) {
+        CompletableFuture<CoapObserveRelation> future = new CompletableFuture<>();
+        concurrencyLimiter.execute(() -> {
+            CompletableFuture<Void> pendingReconnect = reconnecting;
+            if (pendingReconnect == null) {
+                observe(request, endpoint, handler, future);
+            } else {
+                pendingReconnect.whenComplete((result, error) -> observe(request, endpoint, handler, future));
+            }
+        });
+        return future;
     }
 
     /**
-     * Change the timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
+     * Wait for an asynchronous CoAP observe request to be sent
      *
-     * @param timeout The new timeout for connections between the CoAP client and the IKEA TRÅDFRI gateway (in milliseconds)
-     * @since 1.2.0
+     * @param future The future that completes with the observe relation
+     * @return The observe relation that represents the connection to the IKEA TRÅDFRI gateway
+     * @throws CoapClientException Thrown if the observe request could not be sent
+     * @since 1.4.0
      */
-    public void setTimeout(long timeout) {
-        this.timeout = timeout;
+    private CoapObserveRelation awaitObserveRelation(CompletableFuture<CoapObserveRelation> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CoapClientException("Interrupted while waiting for the secure connection to the IKEA TRÅDFRI gateway", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CoapClientException) {
+                throw (CoapClientException) e.getCause();
+            }
+            throw new CoapClientException("Could not make the observe request", e.getCause());
+        }
     }
 
     /**
-     * Make a CoAP request to the specified endpoint
+     * Send an observe registration on the secure connection to the IKEA TRÅDFRI gateway
      *
-     * @param request      The Request object
-     * @param endpoint     The endpoint to make a request to
-     * @param responseType The expected type of response
-     * @param <T>          The expected type of response
-     * @return The response from the IKEA TRÅDFRI gateway (converted to the expected response type)
-     * @since 1.0.0
+     * @param request  The GET request to register as observe request
+     * @param endpoint The endpoint the request is addressed to, used in error messages
+     * @param handler  The handler to handle the responses from the observe request
+     * @param future   The future that completes with the observe relation
+     * @since 1.4.0
      */
-    private <T> T request(Request request, String endpoint, Class<T> responseType) {
+    private void observe(Request request, String endpoint, CoapHandler handler, CompletableFuture<CoapObserveRelation> future) {
+        Endpoint endpointToUse = dtlsEndpoint;
+        if (endpointToUse == null) {
+            concurrencyLimiter.release();
+            future.completeExceptionally(new CoapClientException("Could not observe " + endpoint + ", there is no secure connection to the IKEA TRÅDFRI gateway"));
+            return;
+        }
+        request.setObserve();
+        AtomicBoolean registered = new AtomicBoolean();
+        long sentAt = System.nanoTime();
         try {
-            request.setURI(endpoint);
-            request.send();
-            Response response = request.waitForResponse(timeout);
-            if (response == null) {
-                updateDtlsConnector();
-                response = request.waitForResponse(timeout);
+            ScheduledFuture<?> registrationTimeout = scheduler.schedule(() -> {
+                if (registered.compareAndSet(false, true)) {
+                    concurrencyLimiter.release(System.nanoTime() - sentAt, true);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            CoapHandler registrationHandler = new CoapHandler() {
+                @Override
+                public void onLoad(CoapResponse response) {
+                    releaseRegistration(registered, registrationTimeout, sentAt);
+                    handler.onLoad(response);
+                }
+
+                @Override
+                public void onError() {
+                    releaseRegistration(registered, registrationTimeout, sentAt);
+                    handler.onError();
+                }
+            };
+            synchronized (observeClient) {
+                observeClient.setEndpoint(endpointToUse);
+                observeClient.setTimeout(timeout);
+                future.complete(observeClient.observe(request, registrationHandler));
             }
-            String responsePayload = response.getPayloadString();
-            if (responseType == String.class) {
-                return (T) responsePayload;
+        } catch (RuntimeException e) {
+            if (registered.compareAndSet(false, true)) {
+                concurrencyLimiter.release();
             }
-            return objectMapper.readValue(responsePayload, responseType);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return null;
-        } catch (IOException e) {
-            throw new CoapClientException(e);
+            future.completeExceptionally(new CoapClientException("Could not observe " + endpoint, e));
         }
     }
 
     /**
-     * Make a CoAP request with a payload to the specified endpoint
+     * Give back the place in flight of an observe registration once its first response or error arrives, and cancel its timeout
      *
-     * @param request      The Request object
-     * @param endpoint     The endpoint to make a request to
+     * @param registered          True once the place in flight was given back
+     * @param registrationTimeout The task that gives back the place in flight if no response arrives in time
+     * @param sentAt              The time the registration was sent (in nanoseconds)
+     * @since 1.4.0
+     */
+    private void releaseRegistration(AtomicBoolean registered, ScheduledFuture<?> registrationTimeout, long sentAt) {
+        if (registered.compareAndSet(false, true)) {
+            registrationTimeout.cancel(false);
+            concurrencyLimiter.release(System.nanoTime() - sentAt, false);
+        }
+    }
+
+    /**
+     * Make a CoAP GET request to the specified resource
+     *
+     * @param resource     The resource to make a request to
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return The response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> T get(ApiResource resource, Class<T> responseType) {
+        return await(getAsync(resource, responseType));
+    }
+
+    /**
+     * Make a CoAP POST request with a payload to the specified resource
+     *
+     * @param resource     The resource to make a request to
      * @param payload      The payload to send in the request
      * @param responseType The expected type of response
      * @param <T>          The expected type of response
      * @return The response from the IKEA TRÅDFRI gateway (converted to the expected response type)
-     * @since 1.0.0
+     * @since 1.4.0
      */
-    private <T> T requestWithPayload(Request request, String endpoint, Object payload, Class<T> responseType) {
-        try {
-            String requestPayload = objectMapper.writeValueAsString(payload);
-            request.setPayload(requestPayload);
-            request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_JSON);
-            return request(request, endpoint, responseType);
-        } catch (IOException e) {
-            return null;
+    public <T> T post(ApiResource resource, Object payload, Class<T> responseType) {
+        return await(postAsync(resource, payload, responseType, CommandPriority.INTERACTIVE));
+    }
+
+    /**
+     * Make a CoAP PUT request with a payload to the specified resource
+     *
+     * @param resource     The resource to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return The response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> T put(ApiResource resource, Object payload, Class<T> responseType) {
+        return await(putAsync(resource, payload, responseType, CommandPriority.INTERACTIVE));
+    }
+
+    /**
+     * Make an asynchronous CoAP GET request to the specified resource
+     *
+     * @param resource     The resource to make a request to
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> getAsync(ApiResource resource, Class<T> responseType) {
+        return getAsync(resource, responseType, 0L);
+    }
+
+    /**
+     * Make an asynchronous CoAP GET request to the specified resource with an explicit timeout<br>
+     * Concurrent GET requests to the same resource share one request to the IKEA TRÅDFRI gateway, every caller gets the response and keeps its own timeout
+     *
+     * @param resource       The resource to make a request to
+     * @param responseType   The expected type of response
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param <T>            The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> getAsync(ApiResource resource, Class<T> responseType, long requestTimeout) {
+        return collapsedGetAsync(resource.getUri(), () -> {
+            Request request = Request.newGet();
+            resource.applyTo(request);
+            return request;
+        }, responseType, requestTimeout);
+    }
+
+    /**
+     * Make an asynchronous CoAP POST request with a payload to the specified resource
+     *
+     * @param resource     The resource to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> postAsync(ApiResource resource, Object payload, Class<T> responseType) {
+        return postAsync(resource, payload, responseType, CommandPriority.INTERACTIVE);
+    }
+
+    /**
+     * Make an asynchronous CoAP POST request with a payload to the specified resource<br>
+     * The request is sent once the {@link CommandScheduler} allows it, queued commands with a higher priority are sent first.
+     * When a rate limit is set and the priority lane is full, the future completes exceptionally with a {@link CoapClientException}
+     *
+     * @param resource     The resource to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param priority     The priority of the request
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> postAsync(ApiResource resource, Object payload, Class<T> responseType, CommandPriority priority) {
+        return postAsync(resource, payload, responseType, priority, 0L);
+    }
+
+    /**
+     * Make an asynchronous CoAP POST request with a payload to the specified resource with an explicit timeout<br>
+     * The timeout starts when the request is sent, not when it is queued by the {@link CommandScheduler}
+     *
+     * @param resource       The resource to make a request to
+     * @param payload        The payload to send in the request
+     * @param responseType   The expected type of response
+     * @param priority       The priority of the request
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param <T>            The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> postAsync(ApiResource resource, Object payload, Class<T> responseType, CommandPriority priority, long requestTimeout) {
+        return commandScheduler.submit(priority, () -> requestWithPayloadAsync(Request.newPost(), resource, payload, responseType, requestTimeout));
+    }
+
+    /**
+     * Make an asynchronous CoAP PUT request with a payload to the specified resource
+     *
+     * @param resource     The resource to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> putAsync(ApiResource resource, Object payload, Class<T> responseType) {
+        return putAsync(resource, payload, responseType, CommandPriority.INTERACTIVE);
+    }
+
+    /**
+     * Make an asynchronous CoAP PUT request with a payload to the specified resource<br>
+     * The request is sent once the {@link CommandScheduler} allows it, queued commands with a higher priority are sent first.
+     * When a rate limit is set and the priority lane is full, the future completes exceptionally with a {@link CoapClientException}
+     *
+     * @param resource     The resource to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param priority     The priority of the request
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> putAsync(ApiResource resource, Object payload, Class<T> responseType, CommandPriority priority) {
+        return putAsync(resource, payload, responseType, priority, 0L);
+    }
+
+    /**
+     * Make an asynchronous CoAP PUT request with a payload to the specified resource with an explicit timeout<br>
+     * The timeout starts when the request is sent, not when it is queued by the {@link CommandScheduler}
+     *
+     * @param resource       The resource to make a request to
+     * @param payload        The payload to send in the request
+     * @param responseType   The expected type of response
+     * @param priority       The priority of the request
+     * @param requestTimeout The timeout for the request (in milliseconds), or 0 to derive it from the measured round-trip times
+     * @param <T>            The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> putAsync(ApiResource resource, Object payload, Class<T> responseType, CommandPriority priority, long requestTimeout) {
+        return commandScheduler.submit(priority, () -> requestWithPayloadAsync(Request.newPut(), resource, payload, responseType, requestTimeout));
+    }
+
+    /**
+     * Make asynchronous CoAP PUT requests with payloads to several resources at once<br>
+     * Every request is a separate command for the {@link CommandScheduler} and takes its own place in flight of the {@link ConcurrencyLimiter}.
+     * All requests are handed over at once, so they are sent back to back as far as the rate limit and the number of requests in flight allow.
+     *
+     * @param payloads     The payloads to send, by the resource to send them to
+     * @param responseType The expected type of response
+     * @param priority     The priority of the requests
+     * @param <T>          The expected type of response
+     * @return Futures that complete with the responses from the IKEA TRÅDFRI gateway (converted to the expected response type), by resource
+     * @since 1.4.0
+     */
+    public <T> Map<ApiResource, CompletableFuture<T>> putAllAsync(Map<ApiResource, ?> payloads, Class<T> responseType, CommandPriority priority) {
+        Map<ApiResource, CompletableFuture<T>> responses = new LinkedHashMap<>();
+        for (Map.Entry<ApiResource, ?> payload : payloads.entrySet()) {
+            responses.put(payload.getKey(), putAsync(payload.getKey(), payload.getValue(), responseType, priority));
         }
+        return responses;
     }
 
     /**
-     * Make a CoAP observe request to the specified endpoint
+     * Send a non-confirmable CoAP PUT request with a payload to the specified resource, without waiting for a response<br>
+     * The request is not acknowledged, retransmitted or tracked, and asks the IKEA TRÅDFRI gateway not to respond.
+     * It is meant for frequent updates of which only the latest one matters, a lost request is simply replaced by the next one.
+     * Like other commands, it waits for the {@link CommandScheduler} and takes a place in flight of the {@link ConcurrencyLimiter}, which is given back once it is sent.
      *
-     * @param endpoint The endpoint to make a request to
-     * @param handler  The handler to handle the responses from the observe request
-     * @return The observe relation that represents the connection to the IKEA TRÅDFRI gateway
-     * @since 1.0.0
+     * @param resource The resource to send the request to
+     * @param payload  The payload to send in the request
+     * @param priority The priority of the request
+     * @return A future that completes with true once the request was sent, false if the payload could not be serialized or there is no secure connection
+     * @since 1.4.0
      */
-    public CoapObserveRelation requestObserve(String endpoint, CoapHandler handler) {
-        org.eclipse.californium.core.CoapClient client = new org.eclipse.californium.core.CoapClient();
-        client.setTimeout(timeout);
-        Request request = Request.newGet();
-        request.setURI(endpoint);
-        request.setObserve();
-        CoapObserveRelation relation = client.observe(request, handler);
-        return relation;
+    public CompletableFuture<Boolean> putNonConfirmableAsync(ApiResource resource, Object payload, CommandPriority priority) {
+        return commandScheduler.submit(priority, () -> {
+            CompletableFuture<Boolean> sent = new CompletableFuture<>();
+            concurrencyLimiter.execute(() -> {
+                sent.whenComplete((result, error) -> concurrencyLimiter.release());
+                sendNonConfirmable(resource, payload, sent);
+            });
+            return sent;
+        });
+    }
+
+    /**
+     * Send a non-confirmable CoAP PUT request on the secure connection to the IKEA TRÅDFRI gateway
+     *
+     * @param resource The resource to send the request to
+     * @param payload  The payload to send in the request
+     * @param sent     The future that completes with true once the request was sent, false if it could not be sent
+     * @since 1.4.0
+     */
+    private void sendNonConfirmable(ApiResource resource, Object payload, CompletableFuture<Boolean> sent) {
+        Endpoint endpointToUse = dtlsEndpoint;
+        if (endpointToUse == null || reconnecting != null) {
+            sent.complete(false);
+            return;
+        }
+        Request request = Request.newPut();
+        request.setConfirmable(false);
+        try {
+            setPayload(request, payload);
+        } catch (IOException e) {
+            sent.complete(false);
+            return;
+        }
+        resource.applyTo(request);
+        request.getOptions().setNoResponse(NoResponseOption.SUPPRESS_ALL);
+        request.addMessageObserver(new MessageObserverAdapter() {
+            @Override
+            public void onSent(boolean retransmission) {
+                request.cancel();
+                sent.complete(true);
+            }
+
+            @Override
+            public void onCancel() {
+                sent.complete(false);
+            }
+
+            @Override
+            public void onSendError(Throwable error) {
+                sent.complete(false);
+            }
+        });
+        lastActivity = System.nanoTime();
+        request.send(endpointToUse);
     }
 
     /**
@@ -229,8 +1652,7 @@ public class CoapClient {
      * @since 1.0.0
      */
     public <T> T get(String endpoint, Class<T> responseType) {
-        Request request = Request.newGet();
-        return request(request, endpoint, responseType);
+        return await(getAsync(endpoint, responseType));
     }
 
     /**
@@ -244,8 +1666,7 @@ public class CoapClient {
      * @since 1.0.0
      */
     public <T> T post(String endpoint, Object payload, Class<T> responseType) {
-        Request request = Request.newPost();
-        return requestWithPayload(request, endpoint, payload, responseType);
+        return await(postAsync(endpoint, payload, responseType));
     }
 
     /**
@@ -259,8 +1680,70 @@ public class CoapClient {
      * @since 1.0.0
      */
     public <T> T put(String endpoint, Object payload, Class<T> responseType) {
-        Request request = Request.newPut();
-        return requestWithPayload(request, endpoint, payload, responseType);
+        return await(putAsync(endpoint, payload, responseType));
+    }
+
+    /**
+     * Make an asynchronous CoAP GET request to the specified endpoint<br>
+     * Concurrent GET requests to the same endpoint share one request to the IKEA TRÅDFRI gateway
+     *
+     * @param endpoint     The endpoint to make a request to
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> getAsync(String endpoint, Class<T> responseType) {
+        return collapsedGetAsync(endpoint, () -> {
+            Request request = Request.newGet();
+            request.setURI(endpoint);
+            return request;
+        }, responseType, 0L);
+    }
+
+    /**
+     * Make an asynchronous CoAP POST request with a payload to the specified endpoint
+     *
+     * @param endpoint     The endpoint to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> postAsync(String endpoint, Object payload, Class<T> responseType) {
+        return commandScheduler.submit(CommandPriority.INTERACTIVE, () -> requestWithPayloadAsync(Request.newPost(), endpoint, payload, responseType));
+    }
+
+    /**
+     * Make an asynchronous CoAP PUT request with a payload to the specified endpoint
+     *
+     * @param endpoint     The endpoint to make a request to
+     * @param payload      The payload to send in the request
+     * @param responseType The expected type of response
+     * @param <T>          The expected type of response
+     * @return A future that completes with the response from the IKEA TRÅDFRI gateway (converted to the expected response type)
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> putAsync(String endpoint, Object payload, Class<T> responseType) {
+        return commandScheduler.submit(CommandPriority.INTERACTIVE, () -> requestWithPayloadAsync(Request.newPut(), endpoint, payload, responseType));
+    }
+
+    /**
+     * The class that represents a GET request in flight that is shared by all callers that ask for its URI
+     */
+    private static final class PendingGet {
+
+        /**
+         * The future that completes with the response to the GET request
+         */
+        private final CompletableFuture<Response> response = new CompletableFuture<>();
+
+        /**
+         * The latest deadline of the callers with an explicit timeout (in nanoseconds), or 0 if none
+         */
+        private final AtomicLong deadline = new AtomicLong();
+
     }
 
 }
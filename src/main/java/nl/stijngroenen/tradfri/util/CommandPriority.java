@@ -0,0 +1,13 @@
+package nl.stijngroenen.tradfri.util;
+
+/**
+ * The enumerator that contains the priority lanes of commands sent to the IKEA TRÅDFRI gateway<br>
+ * Queued interactive commands are always sent before queued background commands
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public enum CommandPriority {
+    INTERACTIVE,
+    BACKGROUND,
+}
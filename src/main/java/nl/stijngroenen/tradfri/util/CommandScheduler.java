@@ -0,0 +1,486 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import nl.stijngroenen.tradfri.exception.CoapClientException;
+
+/**
+ * The class that limits the rate of commands sent to the IKEA TRÅDFRI gateway<br>
+ * The rate limit is off by default, in which case every command is sent immediately and is never queued or dropped.
+ * Once a rate is set, commands are sent while tokens are available in a token bucket, which is refilled at that rate.
+ * Commands that have to wait are queued in a bounded queue per {@link CommandPriority}, and interactive commands are sent before background commands.
+ * When a queue is full, either the new command or the oldest queued command fails with a {@link CoapClientException}, depending on the {@link OverflowPolicy} of the lane.
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class CommandScheduler {
+
+    /**
+     * The default number of commands per second, 0 means that the rate is not limited<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final double DEFAULT_RATE = 0.0;
+
+    /**
+     * The default number of commands that can be sent at once after an idle period<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int DEFAULT_BURST = 10;
+
+    /**
+     * The default number of commands that can be queued per priority lane<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * The scheduler used to send queued commands once tokens are available again
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The priority lanes, by priority
+     */
+    private final Map<CommandPriority, Lane> lanes;
+
+    /**
+     * The number of commands per second, or 0 for no limit
+     */
+    private double rate = DEFAULT_RATE;
+
+    /**
+     * The number of commands that can be sent at once after an idle period
+     */
+    private int burst = DEFAULT_BURST;
+
+    /**
+     * The number of tokens in the bucket
+     */
+    private double tokens = DEFAULT_BURST;
+
+    /**
+     * The time the bucket was last refilled (in nanoseconds)
+     */
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * True if sending the queued commands is scheduled, false if not
+     */
+    private boolean drainScheduled;
+
+    /**
+     * Construct the CommandScheduler class
+     *
+     * @param scheduler The scheduler used to send queued commands once tokens are available again
+     * @since 1.4.0
+     */
+    public CommandScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        this.lanes = new EnumMap<>(CommandPriority.class);
+        this.lanes.put(CommandPriority.INTERACTIVE, new Lane(OverflowPolicy.DROP_OLDEST));
+        this.lanes.put(CommandPriority.BACKGROUND, new Lane(OverflowPolicy.REJECT_NEW));
+    }
+
+    /**
+     * Get the number of commands per second
+     *
+     * @return The number of commands per second, or 0 for no limit
+     * @since 1.4.0
+     */
+    public synchronized double getRate() {
+        return this.rate;
+    }
+
+    /**
+     * Change the number of commands per second<br>
+     * With a limit, commands that arrive faster than the rate are queued, and fail once their priority lane is full
+     *
+     * @param rate The new number of commands per second, or 0 for no limit
+     * @since 1.4.0
+     */
+    public void setRate(double rate) {
+        synchronized (this) {
+            refill();
+            this.rate = Math.max(rate, 0.0);
+        }
+        drain();
+    }
+
+    /**
+     * Get the number of commands that can be sent at once after an idle period
+     *
+     * @return The size of the token bucket
+     * @since 1.4.0
+     */
+    public synchronized int getBurst() {
+        return this.burst;
+    }
+
+    /**
+     * Change the number of commands that can be sent at once after an idle period
+     *
+     * @param burst The new size of the token bucket
+     * @since 1.4.0
+     */
+    public void setBurst(int burst) {
+        synchronized (this) {
+            refill();
+            this.burst = Math.max(burst, 1);
+            this.tokens = Math.min(tokens, this.burst);
+        }
+        drain();
+    }
+
+    /**
+     * Get the number of commands that can be queued in a priority lane
+     *
+     * @param priority The priority lane
+     * @return The capacity of the queue of the priority lane
+     * @since 1.4.0
+     */
+    public synchronized int getQueueCapacity(CommandPriority priority) {
+        return lanes.get(priority).capacity;
+    }
+
+    /**
+     * Change the number of commands that can be queued in a priority lane<br>
+     * Commands that are already queued are kept
+     *
+     * @param priority The priority lane
+     * @param capacity The new capacity of the queue of the priority lane
+     * @since 1.4.0
+     */
+    public synchronized void setQueueCapacity(CommandPriority priority, int capacity) {
+        lanes.get(priority).capacity = Math.max(capacity, 0);
+    }
+
+    /**
+     * Get the way a command is handled when a priority lane is full
+     *
+     * @param priority The priority lane
+     * @return The overflow policy of the priority lane
+     * @since 1.4.0
+     */
+    public synchronized OverflowPolicy getOverflowPolicy(CommandPriority priority) {
+        return lanes.get(priority).overflowPolicy;
+    }
+
+    /**
+     * Change the way a command is handled when a priority lane is full
+     *
+     * @param priority       The priority lane
+     * @param overflowPolicy The new overflow policy of the priority lane
+     * @since 1.4.0
+     */
+    public synchronized void setOverflowPolicy(CommandPriority priority, OverflowPolicy overflowPolicy) {
+        lanes.get(priority).overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Get the number of commands waiting in a priority lane
+     *
+     * @param priority The priority lane
+     * @return The number of queued commands
+     * @since 1.4.0
+     */
+    public synchronized int getQueueDepth(CommandPriority priority) {
+        return lanes.get(priority).queue.size();
+    }
+
+    /**
+     * Get the number of commands of a priority lane that have been sent
+     *
+     * @param priority The priority lane
+     * @return The number of sent commands
+     * @since 1.4.0
+     */
+    public synchronized long getDispatchedCount(CommandPriority priority) {
+        return lanes.get(priority).dispatched;
+    }
+
+    /**
+     * Get the number of commands of a priority lane that failed because the lane was full
+     *
+     * @param priority The priority lane
+     * @return The number of rejected or dropped commands
+     * @since 1.4.0
+     */
+    public synchronized long getRejectedCount(CommandPriority priority) {
+        return lanes.get(priority).rejected;
+    }
+
+    /**
+     * Get the average time the sent commands of a priority lane waited before they were sent (in milliseconds)
+     *
+     * @param priority The priority lane
+     * @return The average wait time (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized double getAverageWaitTime(CommandPriority priority) {
+        Lane lane = lanes.get(priority);
+        if (lane.dispatched == 0) {
+            return 0.0;
+        }
+        return lane.totalWait / (double) lane.dispatched / 1_000_000.0;
+    }
+
+    /**
+     * Get the longest time a sent command of a priority lane waited before it was sent (in milliseconds)
+     *
+     * @param priority The priority lane
+     * @return The longest wait time (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized long getMaxWaitTime(CommandPriority priority) {
+        return TimeUnit.NANOSECONDS.toMillis(lanes.get(priority).maxWait);
+    }
+
+    /**
+     * Submit a command to be sent to the IKEA TRÅDFRI gateway
+     *
+     * @param priority The priority lane of the command
+     * @param command  The function that sends the command, it is called once the command may be sent
+     * @param <T>      The type of response to the command
+     * @return A future that completes with the response to the command, or exceptionally if the command was rejected or dropped
+     * @since 1.4.0
+     */
+    public <T> CompletableFuture<T> submit(CommandPriority priority, Supplier<CompletableFuture<T>> command) {
+        QueuedCommand<T> queuedCommand = new QueuedCommand<>(command);
+        QueuedCommand<?> dropped = null;
+        boolean sendNow = false;
+        synchronized (this) {
+            Lane lane = lanes.get(priority);
+            refill();
+            if (!hasQueuedCommands() && (rate == 0.0 || tokens >= 1.0)) {
+                if (rate != 0.0) {
+                    tokens -= 1.0;
+                }
+                lane.dispatched++;
+                sendNow = true;
+            } else {
+                if (lane.queue.size() >= lane.capacity) {
+                    lane.rejected++;
+                    if (lane.overflowPolicy == OverflowPolicy.REJECT_NEW || lane.queue.isEmpty()) {
+                        queuedCommand.fail(priority);
+                        return queuedCommand.future;
+                    }
+                    dropped = lane.queue.poll();
+                }
+                lane.queue.add(queuedCommand);
+            }
+        }
+        if (dropped != null) {
+            dropped.fail(priority);
+        }
+        if (sendNow) {
+            queuedCommand.send();
+        } else {
+            drain();
+        }
+        return queuedCommand.future;
+    }
+
+    /**
+     * Fail all queued commands, for example because the CoAP client is shut down
+     *
+     * @param reason The reason the queued commands are failed
+     * @since 1.4.0
+     */
+    public void cancelAll(String reason) {
+        List<QueuedCommand<?>> cancelled = new ArrayList<>();
+        synchronized (this) {
+            for (Lane lane : lanes.values()) {
+                cancelled.addAll(lane.queue);
+                lane.queue.clear();
+            }
+        }
+        for (QueuedCommand<?> queuedCommand : cancelled) {
+            queuedCommand.future.completeExceptionally(new CoapClientException(reason));
+        }
+    }
+
+    /**
+     * Refill the token bucket for the time that passed since it was last refilled
+     *
+     * @since 1.4.0
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1_000_000_000.0);
+        lastRefill = now;
+    }
+
+    /**
+     * Send the queued commands for which tokens are available, and schedule the rest for when tokens are available again
+     *
+     * @since 1.4.0
+     */
+    private void drain() {
+        List<QueuedCommand<?>> ready = new ArrayList<>();
+        synchronized (this) {
+            refill();
+            long now = System.nanoTime();
+            for (Lane lane : lanes.values()) {
+                while (!lane.queue.isEmpty() && (rate == 0.0 || tokens >= 1.0)) {
+                    QueuedCommand<?> queuedCommand = lane.queue.poll();
+                    if (rate != 0.0) {
+                        tokens -= 1.0;
+                    }
+                    long wait = now - queuedCommand.queuedAt;
+                    lane.dispatched++;
+                    lane.totalWait += wait;
+                    lane.maxWait = Math.max(lane.maxWait, wait);
+                    ready.add(queuedCommand);
+                }
+            }
+            if (!drainScheduled && hasQueuedCommands()) {
+                drainScheduled = true;
+                long delay = (long) Math.ceil((1.0 - tokens) * 1_000_000_000.0 / rate);
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        drainScheduled = false;
+                    }
+                    drain();
+                }, Math.max(delay, 1L), TimeUnit.NANOSECONDS);
+            }
+        }
+        for (QueuedCommand<?> queuedCommand : ready) {
+            queuedCommand.send();
+        }
+    }
+
+    /**
+     * Check if any priority lane has queued commands
+     *
+     * @return True if a command is queued, false if not
+     * @since 1.4.0
+     */
+    private boolean hasQueuedCommands() {
+        for (Lane lane : lanes.values()) {
+            if (!lane.queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The class that contains the queue, settings and metrics of a priority lane
+     */
+    private static class Lane {
+
+        /**
+         * The queued commands, oldest first
+         */
+        private final ArrayDeque<QueuedCommand<?>> queue = new ArrayDeque<>();
+
+        /**
+         * The number of commands that can be queued
+         */
+        private int capacity = DEFAULT_QUEUE_CAPACITY;
+
+        /**
+         * The way a command is handled when the lane is full
+         */
+        private OverflowPolicy overflowPolicy;
+
+        /**
+         * The number of commands that have been sent
+         */
+        private long dispatched;
+
+        /**
+         * The number of commands that failed because the lane was full
+         */
+        private long rejected;
+
+        /**
+         * The total time the sent commands waited (in nanoseconds)
+         */
+        private long totalWait;
+
+        /**
+         * The longest time a sent command waited (in nanoseconds)
+         */
+        private long maxWait;
+
+        /**
+         * Construct the Lane class
+         *
+         * @param overflowPolicy The way a command is handled when the lane is full
+         */
+        Lane(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+    }
+
+    /**
+     * The class that represents a command waiting to be sent
+     *
+     * @param <T> The type of response to the command
+     */
+    private static class QueuedCommand<T> {
+
+        /**
+         * The function that sends the command
+         */
+        private final Supplier<CompletableFuture<T>> command;
+
+        /**
+         * The future that completes with the response to the command
+         */
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /**
+         * The time the command was queued (in nanoseconds)
+         */
+        private final long queuedAt = System.nanoTime();
+
+        /**
+         * Construct the QueuedCommand class
+         *
+         * @param command The function that sends the command
+         */
+        QueuedCommand(Supplier<CompletableFuture<T>> command) {
+            this.command = command;
+        }
+
+        /**
+         * Send the command and pass its response on to the future
+         */
+        void send() {
+            try {
+                command.get().whenComplete((response, error) -> {
+                    if (error != null) {
+                        future.completeExceptionally(error);
+                    } else {
+                        future.complete(response);
+                    }
+                });
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Fail the command because its priority lane is full
+         *
+         * @param priority The priority lane of the command
+         */
+        void fail(CommandPriority priority) {
+            future.completeExceptionally(new CoapClientException("The " + priority.name().toLowerCase() + " command queue is full"));
+        }
+
+    }
+
+}
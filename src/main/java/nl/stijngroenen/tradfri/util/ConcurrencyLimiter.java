@@ -0,0 +1,260 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class that adapts the number of requests in flight to the IKEA TRÅDFRI gateway to its observed latency<br>
+ * The limit grows additively while round-trip times stay healthy, and shrinks multiplicatively when a request times out
+ * or its round-trip time exceeds the average by more than the tolerance (additive increase, multiplicative decrease).
+ * The limit shrinks at most once per window: requests that were sent before the last decrease do not shrink it again.
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * The default number of requests that can be in flight at the start<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+    /**
+     * The default lowest number of requests that can be in flight<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int DEFAULT_MIN_LIMIT = 1;
+
+    /**
+     * The default highest number of requests that can be in flight<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int DEFAULT_MAX_LIMIT = 32;
+
+    /**
+     * The default factor the limit is multiplied with when the gateway is overloaded<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+
+    /**
+     * The default ratio between a round-trip time and the average round-trip time above which the round-trip time counts as a latency spike<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final double DEFAULT_TOLERANCE = 2.0;
+
+    /**
+     * The weight of a new round-trip time in the average round-trip time
+     */
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    /**
+     * The tasks waiting for a request to complete, oldest first
+     */
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+    /**
+     * The number of requests that can be in flight
+     */
+    private double limit = DEFAULT_INITIAL_LIMIT;
+
+    /**
+     * The lowest number of requests that can be in flight
+     */
+    private int minLimit = DEFAULT_MIN_LIMIT;
+
+    /**
+     * The highest number of requests that can be in flight
+     */
+    private int maxLimit = DEFAULT_MAX_LIMIT;
+
+    /**
+     * The factor the limit is multiplied with when the gateway is overloaded
+     */
+    private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+    /**
+     * The ratio between a round-trip time and the average round-trip time above which the round-trip time counts as a latency spike
+     */
+    private double tolerance = DEFAULT_TOLERANCE;
+
+    /**
+     * The number of requests in flight
+     */
+    private int inFlight;
+
+    /**
+     * The exponentially weighted average of the healthy round-trip times (in nanoseconds), or 0 if none was measured yet
+     */
+    private double averageRtt;
+
+    /**
+     * The time the limit was last decreased (in nanoseconds)
+     */
+    private long lastDecrease = System.nanoTime();
+
+    /**
+     * Get the number of requests that can be in flight
+     *
+     * @return The current limit
+     * @since 1.4.0
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of requests in flight
+     *
+     * @return The number of requests in flight
+     * @since 1.4.0
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Get the number of requests waiting for a request in flight to complete
+     *
+     * @return The number of waiting requests
+     * @since 1.4.0
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Get the average round-trip time of healthy requests (in milliseconds)
+     *
+     * @return The average round-trip time (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized double getAverageRtt() {
+        return averageRtt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Change the bounds of the number of requests that can be in flight
+     *
+     * @param minLimit The new lowest number of requests that can be in flight
+     * @param maxLimit The new highest number of requests that can be in flight
+     * @since 1.4.0
+     */
+    public void setLimits(int minLimit, int maxLimit) {
+        synchronized (this) {
+            this.minLimit = Math.max(minLimit, 1);
+            this.maxLimit = Math.max(maxLimit, this.minLimit);
+            this.limit = Math.min(Math.max(limit, this.minLimit), this.maxLimit);
+        }
+        runWaiting();
+    }
+
+    /**
+     * Change the factor the limit is multiplied with when the gateway is overloaded
+     *
+     * @param backoffRatio The new backoff ratio (between 0 and 1)
+     * @since 1.4.0
+     */
+    public synchronized void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = Math.min(Math.max(backoffRatio, 0.1), 1.0);
+    }
+
+    /**
+     * Change the ratio between a round-trip time and the average round-trip time above which the round-trip time counts as a latency spike
+     *
+     * @param tolerance The new tolerance (at least 1)
+     * @since 1.4.0
+     */
+    public synchronized void setTolerance(double tolerance) {
+        this.tolerance = Math.max(tolerance, 1.0);
+    }
+
+    /**
+     * Run a task that sends a request as soon as the limit allows it<br>
+     * The task takes a place in flight, which has to be given back with {@link #release(long, boolean)} once the request completes
+     *
+     * @param task The task that sends a request
+     * @since 1.4.0
+     */
+    public void execute(Runnable task) {
+        synchronized (this) {
+            if (inFlight >= (int) limit || !waiting.isEmpty()) {
+                waiting.add(task);
+                return;
+            }
+            inFlight++;
+        }
+        task.run();
+    }
+
+    /**
+     * Take a place in flight for a request that cannot wait, even if the limit is reached<br>
+     * The place has to be given back with {@link #release(long, boolean)} once the request completes
+     *
+     * @since 1.4.0
+     */
+    public synchronized void acquire() {
+        inFlight++;
+    }
+
+    /**
+     * Give back the place in flight of a completed request, and adapt the limit to its outcome
+     *
+     * @param rtt     The round-trip time of the request (in nanoseconds)
+     * @param dropped True if the request timed out, false if not
+     * @since 1.4.0
+     */
+    public void release(long rtt, boolean dropped) {
+        synchronized (this) {
+            inFlight--;
+            if (dropped || (averageRtt > 0 && rtt > averageRtt * tolerance)) {
+                long now = System.nanoTime();
+                if (now - rtt - lastDecrease > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                }
+            } else {
+                averageRtt = averageRtt == 0 ? rtt : averageRtt + (rtt - averageRtt) * AVERAGE_WEIGHT;
+                if (inFlight + 1 >= limit / 2) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+        }
+        runWaiting();
+    }
+
+    /**
+     * Give back the place in flight of a request that is not answered, such as a non-confirmable request once it was sent<br>
+     * The limit is not adapted, as there is no round-trip time to learn from
+     *
+     * @since 1.4.0
+     */
+    public void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        runWaiting();
+    }
+
+    /**
+     * Run the waiting tasks for which there is room in flight
+     *
+     * @since 1.4.0
+     */
+    private void runWaiting() {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (this) {
+            while (!waiting.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                ready.add(waiting.poll());
+            }
+        }
+        for (Runnable task : ready) {
+            task.run();
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package nl.stijngroenen.tradfri.util;
+
+/**
+ * The enumerator that contains the states of the connection between the CoAP client and the IKEA TRÅDFRI gateway<br>
+ * <ul>
+ *     <li>CONNECTED: the secure connection is set up and the gateway responds</li>
+ *     <li>DEGRADED: a request timed out since the last response was received</li>
+ *     <li>RECONNECTING: the secure connection is being set up again, new requests wait for it</li>
+ *     <li>CLOSED: there is no secure connection, because no credentials were set or the client was closed</li>
+ * </ul>
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public enum ConnectionState {
+    CONNECTED,
+    DEGRADED,
+    RECONNECTING,
+    CLOSED,
+}
@@ -0,0 +1,20 @@
+package nl.stijngroenen.tradfri.util;
+
+/**
+ * The interface that is notified when the state of the connection to the IKEA TRÅDFRI gateway changes
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public interface ConnectionStateListener {
+
+    /**
+     * Handle a change of the state of the connection to the IKEA TRÅDFRI gateway
+     *
+     * @param oldState The previous state of the connection
+     * @param newState The new state of the connection
+     * @since 1.4.0
+     */
+    void onConnectionStateChanged(ConnectionState oldState, ConnectionState newState);
+
+}
@@ -0,0 +1,187 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+import nl.stijngroenen.tradfri.exception.CoapClientException;
+
+/**
+ * The class that fetches resources of the IKEA TRÅDFRI gateway by id, keeping a bounded number of requests in flight
+ *
+ * @param <T> The type of the discovered resources
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class Discovery<T> {
+
+    /**
+     * The ids of the resources to discover
+     */
+    private final int[] ids;
+
+    /**
+     * The function that starts fetching a single resource by id
+     */
+    private final IntFunction<CompletableFuture<T>> fetcher;
+
+    /**
+     * The listener that receives progress updates, or null
+     */
+    private final DiscoveryListener listener;
+
+    /**
+     * The resources that were fetched (by index of their id), or null if fetching failed
+     */
+    private final AtomicReferenceArray<T> results;
+
+    /**
+     * The failures that occurred (by index of their id)
+     */
+    private final AtomicReferenceArray<Throwable> failures;
+
+    /**
+     * The index of the next id to fetch
+     */
+    private final AtomicInteger next;
+
+    /**
+     * The number of resources that completed
+     */
+    private final AtomicInteger completed;
+
+    /**
+     * The future that completes with the result of the discovery
+     */
+    private final CompletableFuture<DiscoveryResult<T>> future;
+
+    /**
+     * Construct the Discovery class
+     *
+     * @param ids      The ids of the resources to discover
+     * @param fetcher  The function that starts fetching a single resource by id
+     * @param listener The listener that receives progress updates, or null
+     * @since 1.4.0
+     */
+    private Discovery(int[] ids, IntFunction<CompletableFuture<T>> fetcher, DiscoveryListener listener) {
+        this.ids = ids;
+        this.fetcher = fetcher;
+        this.listener = listener;
+        this.results = new AtomicReferenceArray<>(ids.length);
+        this.failures = new AtomicReferenceArray<>(ids.length);
+        this.next = new AtomicInteger();
+        this.completed = new AtomicInteger();
+        this.future = new CompletableFuture<>();
+    }
+
+    /**
+     * Discover resources of the IKEA TRÅDFRI gateway
+     *
+     * @param ids         The ids of the resources to discover
+     * @param concurrency The maximum number of requests in flight at the same time
+     * @param fetcher     The function that starts fetching a single resource by id
+     * @param listener    The listener that receives progress updates, or null
+     * @param <T>         The type of the discovered resources
+     * @return A future that completes with the result of the discovery once every resource completed
+     * @since 1.4.0
+     */
+    public static <T> CompletableFuture<DiscoveryResult<T>> discover(int[] ids, int concurrency, IntFunction<CompletableFuture<T>> fetcher, DiscoveryListener listener) {
+        Discovery<T> discovery = new Discovery<>(ids, fetcher, listener);
+        if (ids.length == 0) {
+            discovery.finish();
+        }
+        int workers = Math.min(Math.max(concurrency, 1), ids.length);
+        for (int i = 0; i < workers; i++) {
+            discovery.fetchNext();
+        }
+        return discovery.future;
+    }
+
+    /**
+     * Fetch resources until the window is occupied by a pending request or no ids are left
+     *
+     * @since 1.4.0
+     */
+    private void fetchNext() {
+        int index;
+        while ((index = next.getAndIncrement()) < ids.length) {
+            CompletableFuture<T> request;
+            try {
+                request = fetcher.apply(ids[index]);
+            } catch (RuntimeException e) {
+                request = new CompletableFuture<>();
+                request.completeExceptionally(e);
+            }
+            if (!request.isDone()) {
+                int pendingIndex = index;
+                request.whenComplete((result, error) -> {
+                    complete(pendingIndex, result, error);
+                    fetchNext();
+                });
+                return;
+            }
+            T result = null;
+            Throwable error = null;
+            try {
+                result = request.join();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            complete(index, result, error);
+        }
+    }
+
+    /**
+     * Record the outcome of fetching a single resource
+     *
+     * @param index  The index of the id of the resource
+     * @param result The fetched resource
+     * @param error  The failure that occurred, or null
+     * @since 1.4.0
+     */
+    private void complete(int index, T result, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error == null && result == null) {
+            error = new CoapClientException("No response received for resource " + ids[index]);
+        }
+        if (error != null) {
+            failures.set(index, error);
+        } else {
+            results.set(index, result);
+        }
+        int done = completed.incrementAndGet();
+        if (listener != null) {
+            listener.onProgress(ids[index], done, ids.length);
+        }
+        if (done == ids.length) {
+            finish();
+        }
+    }
+
+    /**
+     * Complete the discovery with the results in the order of their ids
+     *
+     * @since 1.4.0
+     */
+    private void finish() {
+        List<T> resultList = new ArrayList<>(ids.length);
+        Map<Integer, Throwable> failureMap = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (failures.get(i) != null) {
+                failureMap.put(ids[i], failures.get(i));
+            } else {
+                resultList.add(results.get(i));
+            }
+        }
+        future.complete(new DiscoveryResult<>(ids, resultList, failureMap));
+    }
+
+}
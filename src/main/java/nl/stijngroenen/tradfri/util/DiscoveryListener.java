@@ -0,0 +1,21 @@
+package nl.stijngroenen.tradfri.util;
+
+/**
+ * The interface that receives progress updates while resources of the IKEA TRÅDFRI gateway are being discovered
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public interface DiscoveryListener {
+
+    /**
+     * Handle the completion of a single resource, either successfully or with a failure
+     *
+     * @param id        The id of the resource that completed
+     * @param completed The number of resources that completed so far
+     * @param total     The total number of resources to discover
+     * @since 1.4.0
+     */
+    void onProgress(int id, int completed, int total);
+
+}
@@ -0,0 +1,85 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class that contains the result of discovering resources of the IKEA TRÅDFRI gateway
+ *
+ * @param <T> The type of the discovered resources
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class DiscoveryResult<T> {
+
+    /**
+     * The ids of the resources that were discovered
+     */
+    private final int[] ids;
+
+    /**
+     * The successfully discovered resources (in the order of their ids)
+     */
+    private final List<T> results;
+
+    /**
+     * The failures that occurred, by id of the resource
+     */
+    private final Map<Integer, Throwable> failures;
+
+    /**
+     * Construct the DiscoveryResult class
+     *
+     * @param ids      The ids of the resources that were discovered
+     * @param results  The successfully discovered resources (in the order of their ids)
+     * @param failures The failures that occurred, by id of the resource
+     * @since 1.4.0
+     */
+    public DiscoveryResult(int[] ids, List<T> results, Map<Integer, Throwable> failures) {
+        this.ids = ids;
+        this.results = Collections.unmodifiableList(results);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Get the ids of the resources that were discovered
+     *
+     * @return The ids of the resources that were discovered
+     * @since 1.4.0
+     */
+    public int[] getIds() {
+        return ids.clone();
+    }
+
+    /**
+     * Get the successfully discovered resources
+     *
+     * @return The successfully discovered resources (in the order of their ids)
+     * @since 1.4.0
+     */
+    public List<T> getResults() {
+        return results;
+    }
+
+    /**
+     * Get the failures that occurred while discovering the resources
+     *
+     * @return The failures that occurred, by id of the resource (in the order of their ids)
+     * @since 1.4.0
+     */
+    public Map<Integer, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Check if every resource was discovered successfully
+     *
+     * @return True if every resource was discovered successfully, false if not
+     * @since 1.4.0
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+}
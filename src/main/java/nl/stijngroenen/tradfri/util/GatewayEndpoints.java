@@ -0,0 +1,164 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.EndpointContext;
+
+/**
+ * The class that contains the resources of the IKEA TRÅDFRI API on a specific gateway<br>
+ * Every gateway has its own instance, so several gateways can be used side by side
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class GatewayEndpoints {
+
+    /**
+     * The port of the IKEA TRÅDFRI API
+     *
+     * @value 5684
+     */
+    public static final int PORT = 5684;
+
+    /**
+     * The IP-address of the IKEA TRÅDFRI gateway
+     */
+    private final String gatewayIp;
+
+    /**
+     * The base URL of the IKEA TRÅDFRI API on the gateway
+     */
+    private final String baseUrl;
+
+    /**
+     * The destination of requests to the gateway
+     */
+    private final EndpointContext destination;
+
+    /**
+     * The resource for the devices of the gateway
+     */
+    private final ApiResource devices;
+
+    /**
+     * The resource for the groups of the gateway
+     */
+    private final ApiResource groups;
+
+    /**
+     * The resource to authenticate a new client to the gateway
+     */
+    private final ApiResource authenticate;
+
+    /**
+     * The resources for the individual devices of the gateway, by instance id
+     */
+    private final ConcurrentMap<Integer, ApiResource> deviceResources = new ConcurrentHashMap<>();
+
+    /**
+     * The resources for the individual groups of the gateway, by instance id
+     */
+    private final ConcurrentMap<Integer, ApiResource> groupResources = new ConcurrentHashMap<>();
+
+    /**
+     * Construct the GatewayEndpoints class
+     *
+     * @param gatewayIp The IP-address of the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public GatewayEndpoints(String gatewayIp) {
+        this.gatewayIp = gatewayIp;
+        this.baseUrl = "coaps://" + gatewayIp + ":" + PORT;
+        this.destination = new AddressEndpointContext(new InetSocketAddress(gatewayIp, PORT));
+        this.devices = resource(ApiEndpoint.DEVICES);
+        this.groups = resource(ApiEndpoint.GROUPS);
+        this.authenticate = resource(ApiEndpoint.AUTHENTICATE);
+    }
+
+    /**
+     * Get the IP-address of the IKEA TRÅDFRI gateway
+     *
+     * @return The IP-address of the IKEA TRÅDFRI gateway
+     * @since 1.4.0
+     */
+    public String getGatewayIp() {
+        return this.gatewayIp;
+    }
+
+    /**
+     * Get the base URL of the IKEA TRÅDFRI API on the gateway
+     *
+     * @return The base URL of the IKEA TRÅDFRI API on the gateway
+     * @since 1.4.0
+     */
+    public String getBaseUrl() {
+        return this.baseUrl;
+    }
+
+    /**
+     * Get the resource for the devices of the gateway
+     *
+     * @return The resource for the devices of the gateway
+     * @since 1.4.0
+     */
+    public ApiResource getDevices() {
+        return this.devices;
+    }
+
+    /**
+     * Get the resource for the groups of the gateway
+     *
+     * @return The resource for the groups of the gateway
+     * @since 1.4.0
+     */
+    public ApiResource getGroups() {
+        return this.groups;
+    }
+
+    /**
+     * Get the resource to authenticate a new client to the gateway
+     *
+     * @return The resource to authenticate a new client to the gateway
+     * @since 1.4.0
+     */
+    public ApiResource getAuthenticate() {
+        return this.authenticate;
+    }
+
+    /**
+     * Get the resource for a device of the gateway
+     *
+     * @param id The instance id of the device
+     * @return The resource for the device
+     * @since 1.4.0
+     */
+    public ApiResource getDevice(int id) {
+        return deviceResources.computeIfAbsent(id, key -> resource(ApiEndpoint.DEVICES, String.valueOf(key)));
+    }
+
+    /**
+     * Get the resource for a group of the gateway
+     *
+     * @param id The instance id of the group
+     * @return The resource for the group
+     * @since 1.4.0
+     */
+    public ApiResource getGroup(int id) {
+        return groupResources.computeIfAbsent(id, key -> resource(ApiEndpoint.GROUPS, String.valueOf(key)));
+    }
+
+    /**
+     * Create a resource of the gateway from endpoint paths
+     *
+     * @param endpoint The endpoint paths, like the constants in {@link ApiEndpoint}
+     * @return The resource of the gateway
+     * @since 1.4.0
+     */
+    public ApiResource resource(String... endpoint) {
+        return new ApiResource(destination, baseUrl, String.join("/", endpoint).split("/"));
+    }
+
+}
@@ -0,0 +1,176 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import nl.stijngroenen.tradfri.payload.AuthenticateRequest;
+import nl.stijngroenen.tradfri.payload.AuthenticateResponse;
+import nl.stijngroenen.tradfri.payload.DeviceRequest;
+import nl.stijngroenen.tradfri.payload.DeviceResponse;
+import nl.stijngroenen.tradfri.payload.GroupRequest;
+import nl.stijngroenen.tradfri.payload.GroupResponse;
+
+/**
+ * The class that maps JSON payloads of the IKEA TRÅDFRI gateway to Java classes and back<br>
+ * A single object mapper is shared by the whole library, with readers and writers for the payload classes resolved up front
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public final class JsonCodec {
+
+    /**
+     * The object mapper shared by the whole library
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * The readers for the payload classes, by class
+     */
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    /**
+     * The writers for the payload classes, by class
+     */
+    private static final ConcurrentMap<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{DeviceResponse.class, GroupResponse.class, AuthenticateResponse.class, int[].class}) {
+            READERS.put(type, OBJECT_MAPPER.readerFor(type));
+        }
+        for (Class<?> type : new Class<?>[]{DeviceRequest.class, GroupRequest.class, AuthenticateRequest.class}) {
+            WRITERS.put(type, OBJECT_MAPPER.writerFor(type));
+        }
+    }
+
+    /**
+     * Construct the JsonCodec class
+     *
+     * @since 1.4.0
+     */
+    private JsonCodec() {
+    }
+
+    /**
+     * Resolve the readers and writers for the payload classes, so the first request does not pay for it
+     *
+     * @since 1.4.0
+     */
+    public static void warmUp() {
+        // Loading the class resolves the readers and writers in the static initializer
+    }
+
+    /**
+     * Map a JSON payload to a Java class
+     *
+     * @param payload The JSON payload
+     * @param type    The class to map the payload to
+     * @param <T>     The class to map the payload to
+     * @return The mapped payload
+     * @throws IOException Thrown if the payload could not be mapped to the class
+     * @since 1.4.0
+     */
+    public static <T> T read(String payload, Class<T> type) throws IOException {
+        return reader(type).readValue(payload);
+    }
+
+    /**
+     * Map a JSON payload to a Java class, decoding directly from the bytes of the payload<br>
+     * Lists of ids (like the responses of {@link ApiEndpoint#DEVICES} and {@link ApiEndpoint#GROUPS}) are read with a streaming parser without boxing
+     *
+     * @param payload The bytes of the JSON payload
+     * @param type    The class to map the payload to
+     * @param <T>     The class to map the payload to
+     * @return The mapped payload
+     * @throws IOException Thrown if the payload could not be mapped to the class
+     * @since 1.4.0
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T read(byte[] payload, Class<T> type) throws IOException {
+        if (type == int[].class) {
+            return (T) readIds(payload);
+        }
+        return reader(type).readValue(payload);
+    }
+
+    /**
+     * Read a JSON array of ids
+     *
+     * @param payload The bytes of the JSON payload
+     * @return The ids in the payload
+     * @throws IOException Thrown if the payload is not a JSON array of integers
+     * @since 1.4.0
+     */
+    private static int[] readIds(byte[] payload) throws IOException {
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a JSON array of ids");
+            }
+            int[] ids = new int[16];
+            int count = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_NUMBER_INT) {
+                    throw new JsonParseException(parser, "Expected an integer id");
+                }
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = parser.getIntValue();
+            }
+            return Arrays.copyOf(ids, count);
+        }
+    }
+
+    /**
+     * Map a Java object to a JSON payload
+     *
+     * @param value The Java object
+     * @return The JSON payload
+     * @throws JsonProcessingException Thrown if the object could not be mapped to JSON
+     * @since 1.4.0
+     */
+    public static String write(Object value) throws JsonProcessingException {
+        return writer(value.getClass()).writeValueAsString(value);
+    }
+
+    /**
+     * Get the reader for a class
+     *
+     * @param type The class to read
+     * @return The reader for the class
+     * @since 1.4.0
+     */
+    private static ObjectReader reader(Class<?> type) {
+        ObjectReader reader = READERS.get(type);
+        if (reader == null) {
+            reader = READERS.computeIfAbsent(type, OBJECT_MAPPER::readerFor);
+        }
+        return reader;
+    }
+
+    /**
+     * Get the writer for a class
+     *
+     * @param type The class to write
+     * @return The writer for the class
+     * @since 1.4.0
+     */
+    private static ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = WRITERS.get(type);
+        if (writer == null) {
+            writer = WRITERS.computeIfAbsent(type, OBJECT_MAPPER::writerFor);
+        }
+        return writer;
+    }
+
+}
@@ -0,0 +1,315 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class that keeps the observe relations of a CoAP client alive<br>
+ * The active observers are registered again after the secure connection was set up again, after an observe error,
+ * and when they have not received anything for longer than the maximum silence.
+ * Observers are registered again in paced batches, so the IKEA TRÅDFRI gateway is not flooded with observe requests.
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class ObserveSupervisor implements ConnectionStateListener {
+
+    /**
+     * The default number of observers that are registered again at once<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4;
+
+    /**
+     * The default time between two batches of observers that are registered again (in milliseconds)<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final long DEFAULT_BATCH_INTERVAL = 250L;
+
+    /**
+     * The default time between two checks for silent observers (in milliseconds)<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final long DEFAULT_STALENESS_CHECK_INTERVAL = 60000L;
+
+    /**
+     * The default time an observer may go without receiving anything before it is registered again (in milliseconds)<br>
+     * <i>Value: {@value}</i>
+     */
+    public static final long DEFAULT_MAX_SILENCE = 900000L;
+
+    /**
+     * The CoAP client of which the observe relations are kept alive
+     */
+    private final CoapClient coapClient;
+
+    /**
+     * The active observers
+     */
+    private final Set<SupervisedObserver> observers;
+
+    /**
+     * The observers waiting to be registered again, oldest first
+     */
+    private final ArrayDeque<SupervisedObserver> queue;
+
+    /**
+     * True if a batch of observers is scheduled to be registered again, false if not
+     */
+    private boolean draining;
+
+    /**
+     * The number of observers that are registered again at once
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * The time between two batches of observers that are registered again (in milliseconds)
+     */
+    private long batchInterval = DEFAULT_BATCH_INTERVAL;
+
+    /**
+     * The time an observer may go without receiving anything before it is registered again (in milliseconds), or 0 to never register silent observers again
+     */
+    private volatile long maxSilence = DEFAULT_MAX_SILENCE;
+
+    /**
+     * The time between two checks for silent observers (in milliseconds)
+     */
+    private long stalenessCheckInterval = DEFAULT_STALENESS_CHECK_INTERVAL;
+
+    /**
+     * The scheduled check for silent observers, or null
+     */
+    private ScheduledFuture<?> stalenessCheck;
+
+    /**
+     * Construct the ObserveSupervisor class
+     *
+     * @param coapClient The CoAP client of which the observe relations are kept alive
+     * @since 1.4.0
+     */
+    public ObserveSupervisor(CoapClient coapClient) {
+        this.coapClient = coapClient;
+        this.observers = ConcurrentHashMap.newKeySet();
+        this.queue = new ArrayDeque<>();
+        coapClient.addConnectionStateListener(this);
+    }
+
+    /**
+     * Change the pace at which observers are registered again
+     *
+     * @param batchSize     The new number of observers that are registered again at once
+     * @param batchInterval The new time between two batches (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized void setPace(int batchSize, long batchInterval) {
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchInterval = Math.max(batchInterval, 0L);
+    }
+
+    /**
+     * Get the time an observer may go without receiving anything before it is registered again (in milliseconds)
+     *
+     * @return The maximum silence (in milliseconds), or 0 if silent observers are never registered again
+     * @since 1.4.0
+     */
+    public long getMaxSilence() {
+        return this.maxSilence;
+    }
+
+    /**
+     * Change the time an observer may go without receiving anything before it is registered again (in milliseconds)
+     *
+     * @param maxSilence The new maximum silence (in milliseconds), or 0 to never register silent observers again
+     * @since 1.4.0
+     */
+    public void setMaxSilence(long maxSilence) {
+        this.maxSilence = Math.max(maxSilence, 0L);
+    }
+
+    /**
+     * Change the time between two checks for silent observers (in milliseconds)
+     *
+     * @param stalenessCheckInterval The new time between two checks (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized void setStalenessCheckInterval(long stalenessCheckInterval) {
+        this.stalenessCheckInterval = Math.max(stalenessCheckInterval, 1000L);
+        if (stalenessCheck != null) {
+            stalenessCheck.cancel(false);
+            stalenessCheck = null;
+            scheduleStalenessCheck();
+        }
+    }
+
+    /**
+     * Get the number of active observers
+     *
+     * @return The number of active observers
+     * @since 1.4.0
+     */
+    public int getObserverCount() {
+        return observers.size();
+    }
+
+    /**
+     * Start supervising an observer
+     *
+     * @param observer The observer that started observing
+     * @since 1.4.0
+     */
+    public void register(SupervisedObserver observer) {
+        observers.add(observer);
+        synchronized (this) {
+            if (stalenessCheck == null) {
+                scheduleStalenessCheck();
+            }
+        }
+    }
+
+    /**
+     * Stop supervising an observer
+     *
+     * @param observer The observer that stopped observing
+     * @since 1.4.0
+     */
+    public void unregister(SupervisedObserver observer) {
+        observers.remove(observer);
+        synchronized (this) {
+            queue.remove(observer);
+        }
+    }
+
+    /**
+     * Stop all supervised observers and the staleness check
+     *
+     * @since 1.4.0
+     */
+    public void stopAll() {
+        synchronized (this) {
+            if (stalenessCheck != null) {
+                stalenessCheck.cancel(false);
+                stalenessCheck = null;
+            }
+            queue.clear();
+        }
+        for (SupervisedObserver observer : new ArrayList<>(observers)) {
+            observer.stop();
+        }
+        observers.clear();
+    }
+
+    /**
+     * Handle an error of the observe relation of an observer<br>
+     * The observer is registered again, unless the secure connection is being set up again, after which all observers are registered again anyway
+     *
+     * @param observer The observer of which the observe relation failed
+     * @since 1.4.0
+     */
+    public void onObserveError(SupervisedObserver observer) {
+        ConnectionState state = coapClient.getConnectionState();
+        if (state == ConnectionState.RECONNECTING || state == ConnectionState.CLOSED) {
+            return;
+        }
+        enqueue(observer);
+    }
+
+    /**
+     * Register all active observers again once a new secure connection is set up
+     *
+     * @param oldState The previous state of the connection
+     * @param newState The new state of the connection
+     * @since 1.4.0
+     */
+    @Override
+    public void onConnectionStateChanged(ConnectionState oldState, ConnectionState newState) {
+        if (oldState == ConnectionState.RECONNECTING && newState == ConnectionState.CONNECTED) {
+            for (SupervisedObserver observer : observers) {
+                enqueue(observer);
+            }
+        }
+    }
+
+    /**
+     * Queue an observer to be registered again
+     *
+     * @param observer The observer to register again
+     * @since 1.4.0
+     */
+    private void enqueue(SupervisedObserver observer) {
+        synchronized (this) {
+            if (!observers.contains(observer) || queue.contains(observer)) {
+                return;
+            }
+            queue.add(observer);
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        coapClient.getScheduler().execute(this::drainBatch);
+    }
+
+    /**
+     * Register a batch of queued observers again, and schedule the next batch
+     *
+     * @since 1.4.0
+     */
+    private void drainBatch() {
+        List<SupervisedObserver> batch = new ArrayList<>();
+        long delay;
+        synchronized (this) {
+            while (batch.size() < batchSize && !queue.isEmpty()) {
+                batch.add(queue.poll());
+            }
+            delay = batchInterval;
+        }
+        for (SupervisedObserver observer : batch) {
+            try {
+                observer.reregister();
+            } catch (RuntimeException ignored) {
+            }
+        }
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                draining = false;
+                return;
+            }
+        }
+        coapClient.getScheduler().schedule(this::drainBatch, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule the periodic check for silent observers
+     *
+     * @since 1.4.0
+     */
+    private void scheduleStalenessCheck() {
+        stalenessCheck = coapClient.getScheduler().scheduleWithFixedDelay(this::checkStaleness, stalenessCheckInterval, stalenessCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register the observers that have not received anything for longer than the maximum silence again
+     *
+     * @since 1.4.0
+     */
+    private void checkStaleness() {
+        long silence = maxSilence;
+        if (silence == 0 || coapClient.getConnectionState() != ConnectionState.CONNECTED) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (SupervisedObserver observer : observers) {
+            if (now - observer.getLastActivity() > silence) {
+                enqueue(observer);
+            }
+        }
+    }
+
+}
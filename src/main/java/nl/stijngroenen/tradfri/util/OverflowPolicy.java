@@ -0,0 +1,16 @@
+package nl.stijngroenen.tradfri.util;
+
+/**
+ * The enumerator that contains the ways to handle a command when its priority lane is full<br>
+ * <ul>
+ *     <li>REJECT_NEW: the new command fails with a {@link nl.stijngroenen.tradfri.exception.CoapClientException}</li>
+ *     <li>DROP_OLDEST: the oldest queued command fails with a {@link nl.stijngroenen.tradfri.exception.CoapClientException} and the new command is queued</li>
+ * </ul>
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public enum OverflowPolicy {
+    REJECT_NEW,
+    DROP_OLDEST,
+}
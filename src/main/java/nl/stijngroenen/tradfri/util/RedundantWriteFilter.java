@@ -0,0 +1,108 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class that configures and counts the suppression of redundant writes to the IKEA TRÅDFRI gateway<br>
+ * When enabled, an update that only writes properties the gateway already confirmed to have is not sent, and is reported as successful.
+ * A write is only suppressed if the known state is current: the device is observed, or its state was received within the maximum state age.
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class RedundantWriteFilter {
+
+    /**
+     * True if redundant writes are suppressed, false if every write is sent
+     */
+    private volatile boolean enabled;
+
+    /**
+     * The time the state received from the gateway counts as current without observe (in milliseconds), or 0 to only trust observed state
+     */
+    private volatile long maxStateAge;
+
+    /**
+     * The number of writes that were suppressed
+     */
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    /**
+     * Check if redundant writes are suppressed
+     *
+     * @return True if redundant writes are suppressed, false if every write is sent
+     * @since 1.4.0
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Change if redundant writes are suppressed
+     *
+     * @param enabled True to suppress redundant writes, false to send every write
+     * @since 1.4.0
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the time the state received from the gateway counts as current without observe (in milliseconds)
+     *
+     * @return The maximum state age (in milliseconds), or 0 if only observed state is trusted
+     * @since 1.4.0
+     */
+    public long getMaxStateAge() {
+        return this.maxStateAge;
+    }
+
+    /**
+     * Change the time the state received from the gateway counts as current without observe (in milliseconds)<br>
+     * Within this time, a change made by another client (an app, a remote or a write to a single light of a group) can make a suppressed write wrong.
+     *
+     * @param maxStateAge The new maximum state age (in milliseconds), or 0 to only trust observed state
+     * @since 1.4.0
+     */
+    public void setMaxStateAge(long maxStateAge) {
+        this.maxStateAge = Math.max(maxStateAge, 0L);
+    }
+
+    /**
+     * Check if state that was received from the gateway is still current
+     *
+     * @param receivedAt The time the state was received (in milliseconds since the epoch), or 0 if it was never received
+     * @return True if the state was received within the maximum state age, false if not
+     * @since 1.4.0
+     */
+    public boolean isCurrent(long receivedAt) {
+        long age = maxStateAge;
+        return age > 0 && receivedAt > 0 && System.currentTimeMillis() - receivedAt <= age;
+    }
+
+    /**
+     * Get the number of writes that were suppressed
+     *
+     * @return The number of suppressed writes
+     * @since 1.4.0
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * Check if a write has to be suppressed, and count it if it does
+     *
+     * @param redundant True if the write only writes properties the gateway already confirmed to have, according to current state
+     * @return True if the write has to be suppressed, false if it has to be sent
+     * @since 1.4.0
+     */
+    public boolean suppress(boolean redundant) {
+        if (!enabled || !redundant) {
+            return false;
+        }
+        suppressedCount.incrementAndGet();
+        return true;
+    }
+
+}
@@ -0,0 +1,133 @@
+package nl.stijngroenen.tradfri.util;
+
+/**
+ * The class that estimates the round-trip time to the IKEA TRÅDFRI gateway to derive request timeouts from it<br>
+ * The smoothed round-trip time and its variance are tracked as in TCP (Jacobson/Karels), and the timeout is the smoothed round-trip time plus four times the variance.
+ * A timeout doubles the next timeouts until a new round-trip time is measured (Karn's algorithm).
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class RttEstimator {
+
+    /**
+     * The default lowest timeout (in milliseconds)<br>
+     * The {@link CoapClient} raises the lowest timeout to the exchange lifetime of a confirmable request, so no retransmission is cut short by a timeout.
+     * <i>Value: {@value}</i>
+     */
+    public static final long DEFAULT_MIN_TIMEOUT = 300L;
+
+    /**
+     * The weight of a new round-trip time in the smoothed round-trip time
+     */
+    private static final double ALPHA = 0.125;
+
+    /**
+     * The weight of a new deviation in the round-trip time variance
+     */
+    private static final double BETA = 0.25;
+
+    /**
+     * The smoothed round-trip time (in milliseconds), or 0 if none was measured yet
+     */
+    private double smoothedRtt;
+
+    /**
+     * The round-trip time variance (in milliseconds)
+     */
+    private double rttVariance;
+
+    /**
+     * The factor the timeout is multiplied with because of timeouts since the last measured round-trip time
+     */
+    private int backoff = 1;
+
+    /**
+     * The lowest timeout (in milliseconds)
+     */
+    private long minTimeout = DEFAULT_MIN_TIMEOUT;
+
+    /**
+     * Get the smoothed round-trip time (in milliseconds)
+     *
+     * @return The smoothed round-trip time (in milliseconds), or 0 if none was measured yet
+     * @since 1.4.0
+     */
+    public synchronized double getSmoothedRtt() {
+        return this.smoothedRtt;
+    }
+
+    /**
+     * Get the round-trip time variance (in milliseconds)
+     *
+     * @return The round-trip time variance (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized double getRttVariance() {
+        return this.rttVariance;
+    }
+
+    /**
+     * Get the lowest timeout (in milliseconds)
+     *
+     * @return The lowest timeout (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized long getMinTimeout() {
+        return this.minTimeout;
+    }
+
+    /**
+     * Change the lowest timeout (in milliseconds)
+     *
+     * @param minTimeout The new lowest timeout (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized void setMinTimeout(long minTimeout) {
+        this.minTimeout = Math.max(minTimeout, 1L);
+    }
+
+    /**
+     * Get the timeout for the next request (in milliseconds)
+     *
+     * @param maxTimeout The highest timeout, which is also used until a round-trip time has been measured (in milliseconds)
+     * @return The timeout for the next request (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized long getTimeout(long maxTimeout) {
+        if (smoothedRtt == 0) {
+            return maxTimeout;
+        }
+        long timeout = (long) Math.ceil(smoothedRtt + 4 * rttVariance) * backoff;
+        return Math.min(Math.max(timeout, minTimeout), maxTimeout);
+    }
+
+    /**
+     * Add the round-trip time of a successful request that was not retransmitted
+     *
+     * @param rtt The round-trip time of the request (in milliseconds)
+     * @since 1.4.0
+     */
+    public synchronized void addSample(double rtt) {
+        if (smoothedRtt == 0) {
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2;
+        } else {
+            rttVariance = (1 - BETA) * rttVariance + BETA * Math.abs(smoothedRtt - rtt);
+            smoothedRtt = (1 - ALPHA) * smoothedRtt + ALPHA * rtt;
+        }
+        backoff = 1;
+    }
+
+    /**
+     * Double the next timeouts after a request timed out, until a new round-trip time is measured
+     *
+     * @since 1.4.0
+     */
+    public synchronized void backOff() {
+        if (backoff < 64) {
+            backoff *= 2;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * The class that runs tasks one at a time, in the order they were submitted, on a shared executor<br>
+ * Several serial executors can share the same executor without ever running two of their own tasks at the same time
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public class SerialExecutor implements Executor {
+
+    /**
+     * The shared executor that runs the tasks
+     */
+    private final Executor executor;
+
+    /**
+     * The tasks waiting to be run
+     */
+    private final Queue<Runnable> tasks;
+
+    /**
+     * The task that is currently submitted to the shared executor, or null
+     */
+    private Runnable active;
+
+    /**
+     * Construct the SerialExecutor class
+     *
+     * @param executor The shared executor that runs the tasks
+     * @since 1.4.0
+     */
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+        this.tasks = new ArrayDeque<>();
+    }
+
+    /**
+     * Run a task after all previously submitted tasks have completed
+     *
+     * @param task The task to run
+     * @since 1.4.0
+     */
+    @Override
+    public synchronized void execute(Runnable task) {
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * Submit the next waiting task to the shared executor
+     *
+     * @since 1.4.0
+     */
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+        if (active != null) {
+            executor.execute(active);
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package nl.stijngroenen.tradfri.util;
+
+/**
+ * The interface of an observer of a resource of the IKEA TRÅDFRI gateway that is kept alive by the {@link ObserveSupervisor}
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public interface SupervisedObserver {
+
+    /**
+     * Get the time the observer last received a response from the IKEA TRÅDFRI gateway, or was registered
+     *
+     * @return The time of the last activity (in milliseconds since the epoch)
+     * @since 1.4.0
+     */
+    long getLastActivity();
+
+    /**
+     * Register the observe request again, replacing the previous observe relation<br>
+     * The first response of the new observe relation contains the current state of the resource, so changes missed in the meantime are handled
+     *
+     * @return True if the observe request was registered again, false if the observer was stopped
+     * @since 1.4.0
+     */
+    boolean reregister();
+
+    /**
+     * Stop observing the resource
+     *
+     * @return True if successfully stopped observing, false if not
+     * @since 1.4.0
+     */
+    boolean stop();
+
+}
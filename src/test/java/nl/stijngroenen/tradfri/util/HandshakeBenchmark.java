@@ -0,0 +1,155 @@
+package nl.stijngroenen.tradfri.util;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.eclipse.californium.elements.config.Configuration;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
+import org.eclipse.californium.scandium.dtls.pskstore.AdvancedSinglePskStore;
+
+/**
+ * The benchmark that compares the latency of the first request after a full DTLS handshake with the latency of the first request after a resumed DTLS session<br>
+ * A local DTLS CoAP server stands in for the IKEA TRÅDFRI gateway on the loopback address.
+ * Run it with the test classpath, optionally with the number of iterations as the first argument.
+ *
+ * @author Máté Biczó
+ * @version 1.4.0
+ */
+public final class HandshakeBenchmark {
+
+    /**
+     * The identity the CoAP client authenticates with
+     */
+    private static final String IDENTITY = "benchmark";
+
+    /**
+     * The pre-shared key the CoAP client authenticates with
+     */
+    private static final String KEY = "0123456789abcdef";
+
+    /**
+     * The default number of measured handshakes of each kind
+     */
+    private static final int DEFAULT_ITERATIONS = 50;
+
+    /**
+     * The number of handshakes of each kind that are not measured, to warm up the JVM
+     */
+    private static final int WARM_UP_ITERATIONS = 10;
+
+    /**
+     * Construct the HandshakeBenchmark class
+     */
+    private HandshakeBenchmark() {
+    }
+
+    /**
+     * Run the benchmark and print the latencies of both kinds of handshake
+     *
+     * @param args The number of measured handshakes of each kind (optional)
+     * @throws Exception Thrown if the local DTLS CoAP server cannot be started or a request fails
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        CoapServer server = startServer();
+        CoapClient client = new CoapClient(new GatewayEndpoints("127.0.0.1"));
+        try {
+            ApiResource resource = client.getEndpoints().getDevices();
+            client.setCredentials(new Credentials(IDENTITY, KEY));
+            client.get(resource, String.class);
+            for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                measureFullHandshake(client, resource);
+                measureResumedHandshake(client, resource);
+            }
+            double[] full = new double[iterations];
+            double[] resumed = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                full[i] = measureFullHandshake(client, resource);
+                resumed[i] = measureResumedHandshake(client, resource);
+            }
+            print("Full handshake", full);
+            print("Resumed session", resumed);
+        } finally {
+            client.shutdown();
+            server.destroy();
+        }
+    }
+
+    /**
+     * Start the local DTLS CoAP server that answers GET requests for the devices of the gateway
+     *
+     * @return The started server
+     */
+    private static CoapServer startServer() {
+        Configuration configuration = Configuration.createStandardWithoutFile();
+        DtlsConnectorConfig dtlsConnectorConfig = DtlsConnectorConfig.builder(configuration)
+            .setAddress(new InetSocketAddress("127.0.0.1", GatewayEndpoints.PORT))
+            .setAdvancedPskStore(new AdvancedSinglePskStore(IDENTITY, KEY.getBytes(StandardCharsets.UTF_8)))
+            .build();
+        CoapServer server = new CoapServer(configuration);
+        server.addEndpoint(CoapEndpoint.builder()
+            .setConfiguration(configuration)
+            .setConnector(new DTLSConnector(dtlsConnectorConfig))
+            .build());
+        server.add(new CoapResource(ApiEndpoint.DEVICES) {
+            @Override
+            public void handleGET(CoapExchange exchange) {
+                exchange.respond(CoAP.ResponseCode.CONTENT, "[]", MediaTypeRegistry.APPLICATION_JSON);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Measure the first request after a full DTLS handshake, which new credentials force
+     *
+     * @param client   The CoAP client
+     * @param resource The resource to request
+     * @return The time until the response arrived (in milliseconds)
+     */
+    private static double measureFullHandshake(CoapClient client, ApiResource resource) {
+        long start = System.nanoTime();
+        client.setCredentials(new Credentials(IDENTITY, KEY));
+        client.get(resource, String.class);
+        return (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Measure the first request after resuming the DTLS session with an abbreviated handshake
+     *
+     * @param client   The CoAP client
+     * @param resource The resource to request
+     * @return The time until the response arrived (in milliseconds)
+     */
+    private static double measureResumedHandshake(CoapClient client, ApiResource resource) {
+        long start = System.nanoTime();
+        client.reconnect();
+        client.get(resource, String.class);
+        return (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Print the median, 95th percentile and mean of measured latencies
+     *
+     * @param name      The name of the measurement
+     * @param latencies The measured latencies (in milliseconds)
+     */
+    private static void print(String name, double[] latencies) {
+        double[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0.0);
+        System.out.printf("%-16s median %7.2f ms, p95 %7.2f ms, mean %7.2f ms (%d runs)%n",
+            name, sorted[sorted.length / 2], sorted[(int) Math.ceil(sorted.length * 0.95) - 1], mean, sorted.length);
+    }
+
+}